@@ -3,13 +3,18 @@ package dev.gigaherz.util.gddl2.dynamic;
 import com.mojang.datafixers.util.Pair;
 import com.mojang.serialization.DataResult;
 import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.ListBuilder;
+import com.mojang.serialization.MapLike;
+import com.mojang.serialization.RecordBuilder;
 import dev.gigaherz.util.gddl2.structure.GddlElement;
 import dev.gigaherz.util.gddl2.structure.GddlList;
 import dev.gigaherz.util.gddl2.structure.GddlMap;
 import dev.gigaherz.util.gddl2.structure.GddlValue;
 
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Map;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
 /**
@@ -19,13 +24,20 @@ import java.util.stream.Stream;
  * Combined with GDDLOps, this allows using GDDL as a serialization format for arbitrary objects.
  * This is not an automatic serializer, it does not enumerate fields via reflection, and does not automatically generate
  * Codecs from objects.
+ * <p>
+ * Frozen maps and lists are never copied: merging into them returns a new version that shares structure with the original.
+ * {@link #PERSISTENT} builds every map and list frozen, so that encoding a collection one entry at a time takes linear time.
  */
 public final class GDDLOps implements DynamicOps<GddlElement<?>>
 {
-    public static final GDDLOps INSTANCE = new GDDLOps();
+    public static final GDDLOps INSTANCE = new GDDLOps(false);
+    public static final GDDLOps PERSISTENT = new GDDLOps(true);
 
-    private GDDLOps()
+    private final boolean persistent;
+
+    private GDDLOps(boolean persistent)
     {
+        this.persistent = persistent;
     }
 
     @Override
@@ -37,13 +49,23 @@ public final class GDDLOps implements DynamicOps<GddlElement<?>>
     @Override
     public GddlElement<?> emptyMap()
     {
-        return GddlMap.empty();
+        return newMap();
     }
 
     @Override
     public GddlElement<?> emptyList()
     {
-        return GddlList.empty();
+        return newList();
+    }
+
+    private GddlMap newMap()
+    {
+        return persistent ? GddlMap.empty().freeze() : GddlMap.empty();
+    }
+
+    private GddlList newList()
+    {
+        return persistent ? GddlList.empty().freeze() : GddlList.empty();
     }
 
     @Override
@@ -188,15 +210,49 @@ public final class GDDLOps implements DynamicOps<GddlElement<?>>
     public DataResult<GddlElement<?>> mergeToList(GddlElement<?> list, GddlElement<?> value)
     {
         return asNewList(list).map(c -> {
-            c.add(value.copy());
+            if (c.isFrozen())
+                return c.withAdded(value);
+            c.add(value);
             return c;
         });
     }
 
+    @Override
+    public DataResult<GddlElement<?>> mergeToList(GddlElement<?> list, List<GddlElement<?>> values)
+    {
+        var items = GddlList.empty();
+        items.addAll(values);
+        return mergeAllToList(list, items);
+    }
+
+    /**
+     * Appends all the items at once, so the list is copied only once.
+     *
+     * @param items A list owned by the caller, which is returned as-is when there is nothing to append to.
+     */
+    private DataResult<GddlElement<?>> mergeAllToList(GddlElement<?> list, GddlList items)
+    {
+        if (list == null || list.isNull())
+            return DataResult.success(persistent ? items.freeze() : items);
+        return asNewList(list).map(c -> {
+            if (!c.isFrozen())
+            {
+                c.addAll(items);
+                return c;
+            }
+            var result = c;
+            for (var item : items)
+            {
+                result = result.withAdded(item);
+            }
+            return result;
+        });
+    }
+
     private DataResult<GddlList> asNewList(GddlElement<?> element)
     {
         if (element.isNull())
-            return DataResult.success(GddlList.empty());
+            return DataResult.success(newList());
         else if (element.isList())
             return DataResult.success(element.asList().copy());
         else
@@ -209,15 +265,56 @@ public final class GDDLOps implements DynamicOps<GddlElement<?>>
         if (!key.isString())
             return DataResult.error(() -> "Key is not a string");
         return asNewMap(map).map(c -> {
+            if (c.isFrozen())
+                return c.with(key.stringValue(), value);
             c.put(key.stringValue(), value);
             return c;
         });
     }
 
+    @Override
+    public DataResult<GddlElement<?>> mergeToMap(GddlElement<?> map, MapLike<GddlElement<?>> values)
+    {
+        var entries = GddlMap.empty();
+        var iterator = values.entries().iterator();
+        while (iterator.hasNext())
+        {
+            var kv = iterator.next();
+            if (!kv.getFirst().isString())
+                return DataResult.error(() -> "Key is not a string");
+            entries.put(kv.getFirst().stringValue(), kv.getSecond());
+        }
+        return mergeAllToMap(map, entries);
+    }
+
+    /**
+     * Puts all the entries at once, so the map is copied only once.
+     *
+     * @param entries A map owned by the caller, which is returned as-is when there is nothing to merge into.
+     */
+    private DataResult<GddlElement<?>> mergeAllToMap(GddlElement<?> map, GddlMap entries)
+    {
+        if (map == null || map.isNull())
+            return DataResult.success(persistent ? entries.freeze() : entries);
+        return asNewMap(map).map(c -> {
+            if (!c.isFrozen())
+            {
+                c.putAll(entries);
+                return c;
+            }
+            var result = c;
+            for (var entry : entries.entrySet())
+            {
+                result = result.with(entry.getKey(), entry.getValue());
+            }
+            return result;
+        });
+    }
+
     private DataResult<GddlMap> asNewMap(GddlElement<?> element)
     {
         if (element.isNull())
-            return DataResult.success(GddlMap.empty());
+            return DataResult.success(newMap());
         else if (element.isMap())
             return DataResult.success(element.asMap().copy());
         else
@@ -243,7 +340,7 @@ public final class GDDLOps implements DynamicOps<GddlElement<?>>
     {
         var c = GddlMap.empty();
         map.forEach(kv -> c.put(kv.getFirst().stringValue(), kv.getSecond()));
-        return c;
+        return persistent ? c.freeze() : c;
     }
 
     @Override
@@ -251,7 +348,7 @@ public final class GDDLOps implements DynamicOps<GddlElement<?>>
     {
         var c = GddlMap.empty();
         map.forEach((k, v) -> c.put(k.stringValue(), v));
-        return c;
+        return persistent ? c.freeze() : c;
     }
 
     @Override
@@ -267,7 +364,19 @@ public final class GDDLOps implements DynamicOps<GddlElement<?>>
     {
         GddlList c = GddlList.empty();
         input.forEach(c::add);
-        return c;
+        return persistent ? c.freeze() : c;
+    }
+
+    @Override
+    public RecordBuilder<GddlElement<?>> mapBuilder()
+    {
+        return new GddlRecordBuilder();
+    }
+
+    @Override
+    public ListBuilder<GddlElement<?>> listBuilder()
+    {
+        return new GddlListBuilder();
     }
 
     @Override
@@ -278,6 +387,8 @@ public final class GDDLOps implements DynamicOps<GddlElement<?>>
             GddlMap c = input.asMap();
             if (c.containsKey(key))
             {
+                if (c.isFrozen())
+                    return c.without(key);
                 c = c.copy();
                 c.remove(key);
                 return c;
@@ -285,4 +396,90 @@ public final class GDDLOps implements DynamicOps<GddlElement<?>>
         }
         return input;
     }
+
+    /**
+     * Collects the fields of a record into a single map, instead of merging them into a new copy one at a time.
+     */
+    private final class GddlRecordBuilder extends RecordBuilder.AbstractStringBuilder<GddlElement<?>, GddlMap>
+    {
+        private GddlRecordBuilder()
+        {
+            super(GDDLOps.this);
+        }
+
+        @Override
+        protected GddlMap initBuilder()
+        {
+            return GddlMap.empty();
+        }
+
+        @Override
+        protected GddlMap append(String key, GddlElement<?> value, GddlMap builder)
+        {
+            builder.put(key, value);
+            return builder;
+        }
+
+        @Override
+        protected DataResult<GddlElement<?>> build(GddlMap builder, GddlElement<?> prefix)
+        {
+            return mergeAllToMap(prefix, builder);
+        }
+    }
+
+    /**
+     * Collects the items of a list into a single list, instead of merging them into a new copy one at a time.
+     */
+    private final class GddlListBuilder implements ListBuilder<GddlElement<?>>
+    {
+        private DataResult<GddlList> builder = DataResult.success(GddlList.empty());
+
+        @Override
+        public DynamicOps<GddlElement<?>> ops()
+        {
+            return GDDLOps.this;
+        }
+
+        @Override
+        public ListBuilder<GddlElement<?>> add(GddlElement<?> value)
+        {
+            builder = builder.map(b -> {
+                b.add(value);
+                return b;
+            });
+            return this;
+        }
+
+        @Override
+        public ListBuilder<GddlElement<?>> add(DataResult<GddlElement<?>> value)
+        {
+            builder = builder.apply2stable((b, element) -> {
+                b.add(element);
+                return b;
+            }, value);
+            return this;
+        }
+
+        @Override
+        public ListBuilder<GddlElement<?>> withErrorsFrom(DataResult<?> result)
+        {
+            builder = builder.flatMap(b -> result.map(r -> b));
+            return this;
+        }
+
+        @Override
+        public ListBuilder<GddlElement<?>> mapError(UnaryOperator<String> onError)
+        {
+            builder = builder.mapError(onError);
+            return this;
+        }
+
+        @Override
+        public DataResult<GddlElement<?>> build(GddlElement<?> prefix)
+        {
+            var result = builder.flatMap(b -> mergeAllToList(prefix, b));
+            builder = DataResult.success(GddlList.empty());
+            return result;
+        }
+    }
 }
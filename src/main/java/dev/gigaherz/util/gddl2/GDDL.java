@@ -1,15 +1,31 @@
 package dev.gigaherz.util.gddl2;
 
 import dev.gigaherz.util.gddl2.exceptions.ParserException;
+import dev.gigaherz.util.gddl2.internal.Utf8BufferReader;
+import dev.gigaherz.util.gddl2.parsing.EventParser;
+import dev.gigaherz.util.gddl2.parsing.GddlParser;
+import dev.gigaherz.util.gddl2.parsing.GddlEventHandler;
+import dev.gigaherz.util.gddl2.parsing.GddlStreamReader;
 import dev.gigaherz.util.gddl2.parsing.Lexer;
 import dev.gigaherz.util.gddl2.parsing.Parser;
+import dev.gigaherz.util.gddl2.parsing.WhitespaceMode;
+import dev.gigaherz.util.gddl2.queries.Query;
 import dev.gigaherz.util.gddl2.structure.GddlDocument;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 public class GDDL
 {
@@ -37,7 +53,23 @@ public class GDDL
      */
     public static GddlDocument fromFile(String filename, Charset charset) throws ParserException, IOException
     {
-        return fromReader(new FileReader(filename, charset), filename);
+        return fromFile(filename, charset, WhitespaceMode.PRESERVE_ALL_WHITESPACE);
+    }
+
+    /**
+     * Constructs a Parser instance that reads from the given filename.
+     *
+     * @param filename       The filename to read from.
+     * @param charset        The charset.
+     * @param whitespaceMode How much of the whitespace and comments to keep.
+     * @return A parser ready to process the file.
+     * @throws IOException When accessing the file.
+     */
+    public static GddlDocument fromFile(String filename, Charset charset, WhitespaceMode whitespaceMode) throws ParserException, IOException
+    {
+        if (StandardCharsets.UTF_8.equals(charset))
+            return parse(new dev.gigaherz.util.gddl2.parsing.Reader(openFile(Path.of(filename), charset), filename), whitespaceMode);
+        return fromReader(new FileReader(filename, charset), filename, whitespaceMode);
     }
 
     /**
@@ -62,7 +94,23 @@ public class GDDL
      */
     public static GddlDocument fromFile(File file, Charset charset) throws ParserException, IOException
     {
-        return fromReader(new FileReader(file, charset), file.getAbsolutePath());
+        return fromFile(file, charset, WhitespaceMode.PRESERVE_ALL_WHITESPACE);
+    }
+
+    /**
+     * Constructs a Parser instance that reads from the given file.
+     *
+     * @param file           The file to read from.
+     * @param charset        The charset.
+     * @param whitespaceMode How much of the whitespace and comments to keep.
+     * @return A parser ready to process the file.
+     * @throws IOException When accessing the file.
+     */
+    public static GddlDocument fromFile(File file, Charset charset, WhitespaceMode whitespaceMode) throws ParserException, IOException
+    {
+        if (StandardCharsets.UTF_8.equals(charset))
+            return parse(new dev.gigaherz.util.gddl2.parsing.Reader(openFile(file.toPath(), charset), file.getAbsolutePath()), whitespaceMode);
+        return fromReader(new FileReader(file, charset), file.getAbsolutePath(), whitespaceMode);
     }
 
     /**
@@ -87,7 +135,39 @@ public class GDDL
      */
     public static GddlDocument fromFile(Path path, Charset charset) throws ParserException, IOException
     {
-        return fromReader(Files.newBufferedReader(path, charset), path.toString());
+        return fromFile(path, charset, WhitespaceMode.PRESERVE_ALL_WHITESPACE);
+    }
+
+    /**
+     * Constructs a Parser instance that reads from the given file.
+     *
+     * @param path           The file to read from.
+     * @param charset        The charset.
+     * @param whitespaceMode How much of the whitespace and comments to keep.
+     * @return A parser ready to process the file.
+     * @throws IOException When accessing the file.
+     */
+    public static GddlDocument fromFile(Path path, Charset charset, WhitespaceMode whitespaceMode) throws ParserException, IOException
+    {
+        return parse(new dev.gigaherz.util.gddl2.parsing.Reader(openFile(path, charset), path.toString()), whitespaceMode);
+    }
+
+    /**
+     * Parses only the parts of the given UTF-8 file that the queries can reach, skipping everything else.
+     * See {@link Parser#parseSelected(Query...)} for the shape of the resulting document.
+     *
+     * @param path    The file to read from.
+     * @param queries The queries that will be evaluated on the document.
+     * @return The partial document.
+     * @throws IOException When accessing the file.
+     */
+    public static GddlDocument fromFile(Path path, Query... queries) throws ParserException, IOException
+    {
+        try (var reader = openFile(path, StandardCharsets.UTF_8))
+        {
+            var parser = new Parser(new Lexer(new dev.gigaherz.util.gddl2.parsing.Reader(reader, path.toString()), WhitespaceMode.PRESERVE_ALL_WHITESPACE));
+            return parser.parseSelected(queries);
+        }
     }
 
     /**
@@ -133,7 +213,20 @@ public class GDDL
      */
     public static GddlDocument fromStream(InputStream stream, Charset charset, String sourceName) throws ParserException, IOException
     {
-        return fromReader(new InputStreamReader(stream, charset), sourceName);
+        return fromStream(stream, charset, sourceName, WhitespaceMode.PRESERVE_ALL_WHITESPACE);
+    }
+
+    /**
+     * Constructs a Parser instance that reads from the given file.
+     *
+     * @param stream         The file to read from.
+     * @param charset        The charset.
+     * @param whitespaceMode How much of the whitespace and comments to keep.
+     * @return A parser ready to process the file.
+     */
+    public static GddlDocument fromStream(InputStream stream, Charset charset, String sourceName, WhitespaceMode whitespaceMode) throws ParserException, IOException
+    {
+        return fromReader(new InputStreamReader(stream, charset), sourceName, whitespaceMode);
     }
 
     /**
@@ -156,7 +249,261 @@ public class GDDL
      */
     public static GddlDocument fromString(String text, String sourceName) throws ParserException, IOException
     {
-        return fromReader(new StringReader(text), sourceName);
+        return fromCharSequence(text, sourceName);
+    }
+
+    /**
+     * Constructs a Parser instance that reads from the given string.
+     *
+     * @param text           The text to parse.
+     * @param sourceName     The filename to display in parse errors.
+     * @param whitespaceMode How much of the whitespace and comments to keep.
+     * @return A parser ready to process the file.
+     */
+    public static GddlDocument fromString(String text, String sourceName, WhitespaceMode whitespaceMode) throws ParserException, IOException
+    {
+        return fromCharSequence(text, sourceName, whitespaceMode);
+    }
+
+    /**
+     * Constructs a Parser instance that reads directly from the given text, without copying it.
+     *
+     * @param text The text to parse.
+     * @return A parser ready to process the file.
+     */
+    public static GddlDocument fromCharSequence(CharSequence text) throws ParserException, IOException
+    {
+        return fromCharSequence(text, "UNKNOWN");
+    }
+
+    /**
+     * Constructs a Parser instance that reads directly from the given text, without copying it.
+     *
+     * @param text       The text to parse.
+     * @param sourceName The filename to display in parse errors.
+     * @return A parser ready to process the file.
+     */
+    public static GddlDocument fromCharSequence(CharSequence text, String sourceName) throws ParserException, IOException
+    {
+        return fromCharSequence(text, sourceName, WhitespaceMode.PRESERVE_ALL_WHITESPACE);
+    }
+
+    /**
+     * Constructs a Parser instance that reads directly from the given text, without copying it.
+     *
+     * @param text           The text to parse.
+     * @param sourceName     The filename to display in parse errors.
+     * @param whitespaceMode How much of the whitespace and comments to keep.
+     * @return A parser ready to process the file.
+     */
+    public static GddlDocument fromCharSequence(CharSequence text, String sourceName, WhitespaceMode whitespaceMode) throws ParserException, IOException
+    {
+        return parse(new dev.gigaherz.util.gddl2.parsing.Reader(text, sourceName), whitespaceMode);
+    }
+
+    /**
+     * Parses the root of the given text, leaving nested maps and lists to be parsed when they are first accessed.
+     * The text must not be modified while the document is in use. See {@link Parser#parseDeferred()}.
+     *
+     * @param text       The text to parse.
+     * @param sourceName The filename to display in parse errors.
+     * @return The document, with its nested maps and lists deferred.
+     */
+    public static GddlDocument fromCharSequenceDeferred(CharSequence text, String sourceName) throws ParserException, IOException
+    {
+        var parser = new Parser(new Lexer(new dev.gigaherz.util.gddl2.parsing.Reader(text, sourceName), WhitespaceMode.PRESERVE_ALL_WHITESPACE));
+        return parser.parseDeferred();
+    }
+
+    /**
+     * Parses the given text with a parser that is reused by later calls on the same thread, so that its buffers
+     * don't need to be allocated again for every document. See {@link GddlParser#parseShared(CharSequence, String)}.
+     *
+     * @param text       The text to parse.
+     * @param sourceName The filename to display in parse errors.
+     * @return The document
+     */
+    public static GddlDocument fromCharSequenceShared(CharSequence text, String sourceName) throws ParserException, IOException
+    {
+        return GddlParser.parseShared(text, sourceName);
+    }
+
+    /**
+     * Parses the given text, splitting the children of a large root map or list into chunks that are parsed
+     * in parallel on the common fork-join pool. See {@link Parser#parseParallel()}.
+     *
+     * @param text       The text to parse.
+     * @param sourceName The filename to display in parse errors.
+     * @return The document
+     */
+    public static GddlDocument fromCharSequenceParallel(CharSequence text, String sourceName) throws ParserException, IOException
+    {
+        var parser = new Parser(new Lexer(new dev.gigaherz.util.gddl2.parsing.Reader(text, sourceName), WhitespaceMode.PRESERVE_ALL_WHITESPACE));
+        return parser.parseParallel();
+    }
+
+    /**
+     * Loads the whole file into memory, then parses it like {@link #fromCharSequenceParallel(CharSequence, String)}.
+     *
+     * @param path    The file to parse.
+     * @param charset The charset of the file.
+     * @return The document
+     */
+    public static GddlDocument fromFileParallel(Path path, Charset charset) throws ParserException, IOException
+    {
+        return fromCharSequenceParallel(Files.readString(path, charset), path.toString());
+    }
+
+    /**
+     * Loads many UTF-8 files concurrently. See {@link #loadAll(Collection, Charset, int)}.
+     *
+     * @param paths The files to load.
+     * @return The documents that were loaded, and the errors for the files that could not be.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the files.
+     */
+    public static LoadResult loadAll(Collection<Path> paths) throws InterruptedException
+    {
+        return loadAll(paths, StandardCharsets.UTF_8, DEFAULT_LOAD_PARALLELISM);
+    }
+
+    /**
+     * Loads many files concurrently, each one on its own virtual thread. At most {@code parallelism} files
+     * are open at the same time. A file that fails to load doesn't stop the others: its exception is
+     * collected in the result instead of being thrown.
+     *
+     * @param paths       The files to load. Duplicates are loaded once.
+     * @param charset     The charset of the files.
+     * @param parallelism The maximum number of files read and parsed at the same time.
+     * @return The documents that were loaded, and the errors for the files that could not be.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the files.
+     */
+    public static LoadResult loadAll(Collection<Path> paths, Charset charset, int parallelism) throws InterruptedException
+    {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("The parallelism must be at least 1.");
+
+        var permits = new Semaphore(parallelism);
+        var tasks = new LinkedHashMap<Path, Future<GddlDocument>>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            for (var path : paths)
+            {
+                if (tasks.containsKey(path))
+                    continue;
+
+                tasks.put(path, executor.submit(() -> {
+                    permits.acquire();
+                    try (var reader = new dev.gigaherz.util.gddl2.parsing.Reader(openFile(path, charset), path.toString()))
+                    {
+                        return parse(reader, WhitespaceMode.PRESERVE_ALL_WHITESPACE);
+                    }
+                    finally
+                    {
+                        permits.release();
+                    }
+                }));
+            }
+
+            var documents = new LinkedHashMap<Path, GddlDocument>();
+            var errors = new LinkedHashMap<Path, Exception>();
+            for (var entry : tasks.entrySet())
+            {
+                try
+                {
+                    documents.put(entry.getKey(), entry.getValue().get());
+                }
+                catch (ExecutionException e)
+                {
+                    if (e.getCause() instanceof Exception ex)
+                        errors.put(entry.getKey(), ex);
+                    else
+                        throw new IllegalStateException("Unexpected error loading " + entry.getKey(), e.getCause());
+                }
+                catch (InterruptedException e)
+                {
+                    executor.shutdownNow();
+                    throw e;
+                }
+            }
+            return new LoadResult(documents, errors);
+        }
+    }
+
+    /**
+     * Loads every UTF-8 file under the given directory whose file name matches a glob pattern, such as {@code "*.gddl"}.
+     * See {@link #loadDirectory(Path, String, Charset, int)}.
+     *
+     * @param directory The directory to search, including its subdirectories.
+     * @param glob      The pattern the file names must match.
+     * @return The documents that were loaded, and the errors for the files that could not be.
+     * @throws IOException          If the directory could not be walked.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the files.
+     */
+    public static LoadResult loadDirectory(Path directory, String glob) throws IOException, InterruptedException
+    {
+        return loadDirectory(directory, glob, StandardCharsets.UTF_8, DEFAULT_LOAD_PARALLELISM);
+    }
+
+    /**
+     * Loads every file under the given directory whose file name matches a glob pattern, such as {@code "*.gddl"},
+     * like {@link #loadAll(Collection, Charset, int)}. Files are visited in sorted order.
+     *
+     * @param directory   The directory to search, including its subdirectories.
+     * @param glob        The pattern the file names must match.
+     * @param charset     The charset of the files.
+     * @param parallelism The maximum number of files read and parsed at the same time.
+     * @return The documents that were loaded, and the errors for the files that could not be.
+     * @throws IOException          If the directory could not be walked.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the files.
+     */
+    public static LoadResult loadDirectory(Path directory, String glob, Charset charset, int parallelism) throws IOException, InterruptedException
+    {
+        var matcher = directory.getFileSystem().getPathMatcher("glob:" + glob);
+        List<Path> paths;
+        try (var files = Files.walk(directory))
+        {
+            paths = files
+                    .filter(path -> matcher.matches(path.getFileName()) && Files.isRegularFile(path))
+                    .sorted()
+                    .toList();
+        }
+        return loadAll(paths, charset, parallelism);
+    }
+
+    /**
+     * Constructs a Parser instance that reads directly from the given character array, without copying it.
+     *
+     * @param text The text to parse.
+     * @return A parser ready to process the file.
+     */
+    public static GddlDocument fromChars(char[] text) throws ParserException, IOException
+    {
+        return fromChars(text, "UNKNOWN");
+    }
+
+    /**
+     * Constructs a Parser instance that reads directly from the given character array, without copying it.
+     *
+     * @param text       The text to parse.
+     * @param sourceName The filename to display in parse errors.
+     * @return A parser ready to process the file.
+     */
+    public static GddlDocument fromChars(char[] text, String sourceName) throws ParserException, IOException
+    {
+        return fromChars(text, sourceName, WhitespaceMode.PRESERVE_ALL_WHITESPACE);
+    }
+
+    /**
+     * Constructs a Parser instance that reads directly from the given character array, without copying it.
+     *
+     * @param text           The text to parse.
+     * @param sourceName     The filename to display in parse errors.
+     * @param whitespaceMode How much of the whitespace and comments to keep.
+     * @return A parser ready to process the file.
+     */
+    public static GddlDocument fromChars(char[] text, String sourceName, WhitespaceMode whitespaceMode) throws ParserException, IOException
+    {
+        return parse(new dev.gigaherz.util.gddl2.parsing.Reader(text, sourceName), whitespaceMode);
     }
 
     /**
@@ -179,8 +526,173 @@ public class GDDL
      */
     public static GddlDocument fromReader(java.io.Reader reader, String sourceName) throws ParserException, IOException
     {
-        var parser = new Parser(new Lexer(new dev.gigaherz.util.gddl2.parsing.Reader(reader, sourceName)));
+        return fromReader(reader, sourceName, WhitespaceMode.PRESERVE_ALL_WHITESPACE);
+    }
+
+    /**
+     * Constructs a Parser instance that reads from the given file.
+     *
+     * @param reader         The stream to read from.
+     * @param sourceName     The filename to display in parse errors.
+     * @param whitespaceMode How much of the whitespace and comments to keep.
+     * @return A parser ready to process the file.
+     */
+    public static GddlDocument fromReader(java.io.Reader reader, String sourceName, WhitespaceMode whitespaceMode) throws ParserException, IOException
+    {
+        return parse(new dev.gigaherz.util.gddl2.parsing.Reader(reader, sourceName), whitespaceMode);
+    }
+    //endregion
+
+    //region Event Parsing
+
+    /**
+     * Parses the given UTF-8 file, reporting its contents to the handler instead of building a document.
+     *
+     * @param path    The file to read from.
+     * @param handler The handler that receives the events.
+     * @throws IOException     When accessing the file.
+     * @throws ParserException When parsing
+     */
+    public static void parseEvents(Path path, GddlEventHandler handler) throws ParserException, IOException
+    {
+        parseEvents(path, StandardCharsets.UTF_8, handler);
+    }
+
+    /**
+     * Parses the given file, reporting its contents to the handler instead of building a document.
+     *
+     * @param path    The file to read from.
+     * @param charset The charset.
+     * @param handler The handler that receives the events.
+     * @throws IOException     When accessing the file.
+     * @throws ParserException When parsing
+     */
+    public static void parseEvents(Path path, Charset charset, GddlEventHandler handler) throws ParserException, IOException
+    {
+        try (var reader = openFile(path, charset))
+        {
+            parseEvents(new dev.gigaherz.util.gddl2.parsing.Reader(reader, path.toString()), handler);
+        }
+    }
+
+    /**
+     * Parses the given text, reporting its contents to the handler instead of building a document.
+     *
+     * @param text       The text to parse.
+     * @param sourceName The filename to display in parse errors.
+     * @param handler    The handler that receives the events.
+     * @throws IOException     When accessing the text.
+     * @throws ParserException When parsing
+     */
+    public static void parseEvents(CharSequence text, String sourceName, GddlEventHandler handler) throws ParserException, IOException
+    {
+        parseEvents(new dev.gigaherz.util.gddl2.parsing.Reader(text, sourceName), handler);
+    }
+
+    /**
+     * Parses the contents of the given reader, reporting them to the handler instead of building a document.
+     *
+     * @param reader     The stream to read from.
+     * @param sourceName The filename to display in parse errors.
+     * @param handler    The handler that receives the events.
+     * @throws IOException     When accessing the stream.
+     * @throws ParserException When parsing
+     */
+    public static void parseEvents(java.io.Reader reader, String sourceName, GddlEventHandler handler) throws ParserException, IOException
+    {
+        parseEvents(new dev.gigaherz.util.gddl2.parsing.Reader(reader, sourceName), handler);
+    }
+    //endregion
+
+    //region Streaming
+
+    /**
+     * Opens the given UTF-8 file for pull-based reading. The returned reader must be closed.
+     *
+     * @param path The file to read from.
+     * @return A reader positioned before the first event of the document.
+     * @throws IOException When accessing the file.
+     */
+    public static GddlStreamReader openStream(Path path) throws IOException
+    {
+        return openStream(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Opens the given file for pull-based reading. The returned reader must be closed.
+     *
+     * @param path    The file to read from.
+     * @param charset The charset.
+     * @return A reader positioned before the first event of the document.
+     * @throws IOException When accessing the file.
+     */
+    public static GddlStreamReader openStream(Path path, Charset charset) throws IOException
+    {
+        return openStream(new dev.gigaherz.util.gddl2.parsing.Reader(openFile(path, charset), path.toString()));
+    }
+
+    /**
+     * Opens the given text for pull-based reading.
+     *
+     * @param text       The text to read.
+     * @param sourceName The filename to display in parse errors.
+     * @return A reader positioned before the first event of the document.
+     */
+    public static GddlStreamReader openStream(CharSequence text, String sourceName)
+    {
+        return openStream(new dev.gigaherz.util.gddl2.parsing.Reader(text, sourceName));
+    }
+
+    /**
+     * Opens the contents of the given reader for pull-based reading. Closing the returned reader also closes this one.
+     *
+     * @param reader     The stream to read from.
+     * @param sourceName The filename to display in parse errors.
+     * @return A reader positioned before the first event of the document.
+     */
+    public static GddlStreamReader openStream(java.io.Reader reader, String sourceName)
+    {
+        return openStream(new dev.gigaherz.util.gddl2.parsing.Reader(reader, sourceName));
+    }
+    //endregion
+
+    //region Implementation
+    private static final int DEFAULT_LOAD_PARALLELISM = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Opens a file for reading. UTF-8 files are memory-mapped and decoded straight into the Reader's window,
+     * skipping the intermediate buffering of a BufferedReader and its stream decoder.
+     * Files that cannot be mapped usefully (empty or special files, and files over 2GB) are read the usual way.
+     */
+    private static java.io.Reader openFile(Path path, Charset charset) throws IOException
+    {
+        if (!StandardCharsets.UTF_8.equals(charset))
+            return Files.newBufferedReader(path, charset);
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size == 0 || size > Integer.MAX_VALUE)
+                return Files.newBufferedReader(path, charset);
+            return new Utf8BufferReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    private static GddlDocument parse(dev.gigaherz.util.gddl2.parsing.Reader reader, WhitespaceMode whitespaceMode) throws ParserException, IOException
+    {
+        var parser = new Parser(new Lexer(reader, whitespaceMode));
         return parser.parse();
     }
+
+    private static GddlStreamReader openStream(dev.gigaherz.util.gddl2.parsing.Reader reader)
+    {
+        return new GddlStreamReader(new Lexer(reader, WhitespaceMode.DROP_ALL));
+    }
+
+    private static void parseEvents(dev.gigaherz.util.gddl2.parsing.Reader reader, GddlEventHandler handler) throws ParserException, IOException
+    {
+        var parser = new EventParser(new Lexer(reader, WhitespaceMode.DROP_ALL));
+        parser.parse(handler);
+    }
     //endregion
 }
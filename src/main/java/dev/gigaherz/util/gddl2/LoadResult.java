@@ -0,0 +1,35 @@
+package dev.gigaherz.util.gddl2;
+
+import dev.gigaherz.util.gddl2.structure.GddlDocument;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * The outcome of loading a batch of files. Each file ends up in exactly one of the two maps,
+ * and both maps keep the order in which the files were requested.
+ *
+ * @param documents The documents that were loaded successfully, by path.
+ * @param errors    The exceptions thrown while reading or parsing the rest of the files, by path.
+ */
+public record LoadResult(Map<Path, GddlDocument> documents, Map<Path, Exception> errors)
+{
+    /**
+     * @return True if any of the files failed to load.
+     */
+    public boolean hasErrors()
+    {
+        return !errors.isEmpty();
+    }
+
+    /**
+     * @param path The path of the file, as it was given to the loader.
+     * @return The document loaded from the file, or null if the file was not loaded.
+     */
+    @Nullable
+    public GddlDocument get(Path path)
+    {
+        return documents.get(path);
+    }
+}
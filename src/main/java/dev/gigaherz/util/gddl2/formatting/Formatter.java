@@ -4,9 +4,7 @@ import dev.gigaherz.util.gddl2.internal.BasicIntStack;
 import dev.gigaherz.util.gddl2.internal.Utility;
 import dev.gigaherz.util.gddl2.structure.*;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
+import java.util.*;
 import java.util.regex.Pattern;
 
 public class Formatter
@@ -155,7 +153,50 @@ public class Formatter
         }
     }
 
+    /**
+     * Formats an element. Nested maps and lists are kept in an explicit stack instead of the call stack,
+     * so that deeply nested documents don't overflow it.
+     */
     private void formatElement(GddlElement<?> e, boolean hasNext)
+    {
+        if (!e.isMap() && !e.isList())
+        {
+            formatScalar(e);
+            return;
+        }
+
+        var complexities = measureComplexity(e);
+
+        var open = new ArrayDeque<OpenCollection>();
+        var current = beginCollection(e, hasNext, complexities);
+        while (true)
+        {
+            if (current.index < current.size)
+            {
+                var child = beginItem(current);
+                if (child.isMap() || child.isList())
+                {
+                    open.push(current);
+                    current = beginCollection(child, current.hasNextItem, complexities);
+                    continue;
+                }
+
+                formatScalar(child);
+                endItem(current, child);
+                continue;
+            }
+
+            endCollection(current);
+            if (open.isEmpty())
+                return;
+
+            var finished = current;
+            current = open.pop();
+            endItem(current, finished.collection);
+        }
+    }
+
+    private void formatScalar(GddlElement<?> e)
     {
         if (e.isValue())
         {
@@ -165,18 +206,49 @@ public class Formatter
         {
             formatReference(e.asReference());
         }
-        else if (e.isMap())
+        else
         {
-            formatMap(e.asMap(), hasNext);
+            throw new IllegalStateException("A new Element type has been added without updating Formatter#formatElement.");
         }
-        else if (e.isList())
+    }
+
+    /**
+     * Computes the formatting complexity of every map and list in the tree in a single pass,
+     * adding up the children the same way as {@link GddlElement#getFormattingComplexity()}.
+     */
+    private static Map<GddlElement<?>, Integer> measureComplexity(GddlElement<?> root)
+    {
+        Map<GddlElement<?>, Integer> complexities = new IdentityHashMap<>();
+
+        // Visit every collection before its children, then add them up in reverse order, which visits children first.
+        List<GddlElement<?>> collections = new ArrayList<>();
+        var pending = new ArrayDeque<GddlElement<?>>();
+        pending.push(root);
+        while (!pending.isEmpty())
         {
-            formatList(e.asList(), hasNext);
+            var e = pending.pop();
+            collections.add(e);
+            for (var child : e.isMap() ? e.asMap().values() : e.asList())
+            {
+                if (child.isMap() || child.isList())
+                    pending.push(child);
+            }
         }
-        else
+
+        for (int i = collections.size() - 1; i >= 0; i--)
         {
-            throw new IllegalStateException("A new Element type has been added without updating Formatter#formatElement.");
+            var e = collections.get(i);
+            int weight = e.isMap() ? 3 : 1;
+            int complexity = 2;
+            for (var child : e.isMap() ? e.asMap().values() : e.asList())
+            {
+                var childComplexity = complexities.get(child);
+                complexity += weight * (childComplexity != null ? childComplexity : child.getFormattingComplexity());
+            }
+            complexities.put(e, complexity);
         }
+
+        return complexities;
     }
 
     private void formatValue(GddlValue v)
@@ -409,15 +481,19 @@ public class Formatter
         }
     }
 
-    private void formatMap(GddlMap c, boolean hasNext0)
+    /**
+     * Writes the opening of a map or list, and prepares to write its children.
+     */
+    private OpenCollection beginCollection(GddlElement<?> c, boolean hasNext, Map<GddlElement<?>, Integer> complexities)
     {
         pushIndent();
 
-        boolean oneElementPerLine = c.getFormattingComplexity() > options.oneElementPerLineThreshold;
+        boolean oneElementPerLine = complexities.get(c) > options.oneElementPerLineThreshold;
+        var collection = new OpenCollection(c, hasNext, oneElementPerLine);
 
-        if (c.hasTypeName())
+        if (collection.map != null && collection.map.hasTypeName())
         {
-            builder.append(c.getTypeName());
+            builder.append(collection.map.getTypeName());
             if (options.lineBreaksBeforeOpeningBrace == 0)
                 builder.append(' ');
         }
@@ -430,8 +506,8 @@ public class Formatter
         {
             appendMultiple(' ', options.spacesBeforeOpeningBrace);
         }
-        builder.append('{');
-        if (c.isEmpty() && !oneElementPerLine)
+        builder.append(collection.map != null ? '{' : '[');
+        if (collection.map != null && collection.size == 0 && !oneElementPerLine)
         {
             appendMultiple(' ', options.spacesInEmptyCollection);
         }
@@ -446,63 +522,85 @@ public class Formatter
         pushIndent();
         incIndent();
 
-        boolean first = true;
-        List<String> keys = new ArrayList<>(c.keySet());
-        if (options.sortMapKeys) keys.sort(String::compareTo);
-        for (int i = 0; i < keys.size(); i++)
-        {
-            String key = keys.get(i);
-            final GddlElement<?> e = c.get(key);
-            pushIndent();
+        return collection;
+    }
+
+    /**
+     * Writes everything that goes before the next child of a map or list, and returns the child.
+     */
+    private GddlElement<?> beginItem(OpenCollection c)
+    {
+        String key = c.keys != null ? c.keys.get(c.index) : null;
+        final GddlElement<?> e = key != null ? c.map.get(key) : c.list.get(c.index);
+        pushIndent();
 
-            if (first && (!oneElementPerLine || options.lineBreaksAfterOpeningBrace == 0))
+        boolean first = c.index == 0;
+        if (first && (!c.oneElementPerLine || options.lineBreaksAfterOpeningBrace == 0))
+        {
+            clearIndent();
+        }
+        else if (!first)
+        {
+            if (c.oneElementPerLine)
             {
-                clearIndent();
+                builder.append("\n");
             }
-            else if (!first)
+            else
             {
-                if (oneElementPerLine)
-                {
-                    builder.append("\n");
-                }
-                else
-                {
-                    appendMultiple(' ', options.spacesAfterComma);
-                }
-
-                if (!oneElementPerLine)
-                    clearIndent();
+                appendMultiple(' ', options.spacesAfterComma);
             }
 
-            boolean hasNext1 = (i + 1) < c.size();
+            if (!c.oneElementPerLine)
+                clearIndent();
+        }
 
-            formatComment(e);
-            appendIndent();
+        c.hasNextItem = (c.index + 1) < c.size;
+
+        formatComment(e);
+        appendIndent();
+        if (key != null)
+        {
             if (options.alwaysUseStringLiterals || !Utility.isValidIdentifier(key))
                 key = Utility.escapeString(key);
             builder.append(key);
             appendMultiple(' ', options.spacesBeforeEquals);
             builder.append(options.useJsonDelimiters ? ':' : '=');
             appendMultiple(' ', options.spacesAfterEquals);
-            formatElement(e, hasNext1);
+        }
 
-            if (hasNext1 && ((!e.isCollection()) || !options.omitCommaAfterClosingBrace))
-            {
-                appendMultiple(' ', options.spacesBeforeComma);
-                builder.append(',');
-            }
+        return e;
+    }
 
-            first = false;
-            popIndent();
+    /**
+     * Writes everything that goes after a child of a map or list, once the child itself has been written.
+     */
+    private void endItem(OpenCollection c, GddlElement<?> e)
+    {
+        if (c.hasNextItem && ((!e.isMap() && !e.isList()) || !options.omitCommaAfterClosingBrace))
+        {
+            appendMultiple(' ', options.spacesBeforeComma);
+            builder.append(',');
         }
 
-        if (c.hasTrailingComment() && options.writeComments)
-            formatComment(c.getTrailingComment());
+        c.index++;
+        popIndent();
+    }
+
+    /**
+     * Writes the closing of a map or list, after all of its children.
+     */
+    private void endCollection(OpenCollection c)
+    {
+        String trailingComment = c.map != null
+                ? (c.map.hasTrailingComment() ? c.map.getTrailingComment() : null)
+                : (c.list.hasTrailingComment() ? c.list.getTrailingComment() : null);
+        if (trailingComment != null && options.writeComments)
+            formatComment(trailingComment);
 
         popIndent();
-        if (!c.isEmpty() || oneElementPerLine) // Done on the open side
+        if (c.list != null || c.size > 0 || c.oneElementPerLine) // Done on the open side for empty maps
         {
-            if (oneElementPerLine && options.lineBreaksBeforeClosingBrace > 0)
+            if (c.oneElementPerLine && options.lineBreaksBeforeClosingBrace > 0)
             {
                 appendMultiple('\n', options.lineBreaksBeforeClosingBrace);
                 appendIndent();
@@ -512,10 +610,10 @@ public class Formatter
                 appendMultiple(' ', options.spacesBeforeClosingBrace);
             }
         }
-        builder.append('}');
-        if (!hasNext0 || options.omitCommaAfterClosingBrace)
+        builder.append(c.map != null ? '}' : ']');
+        if (!c.hasNext || options.omitCommaAfterClosingBrace)
         {
-            if (oneElementPerLine && options.lineBreaksAfterClosingBrace > 0)
+            if (c.oneElementPerLine && options.lineBreaksAfterClosingBrace > 0)
             {
                 appendMultiple('\n', options.lineBreaksAfterClosingBrace);
             }
@@ -528,103 +626,42 @@ public class Formatter
         popIndent();
     }
 
-    private void formatList(GddlList c, boolean hasNext0)
+    /**
+     * A map or list being written, and the position within its children.
+     */
+    private final class OpenCollection
     {
-        pushIndent();
-
-        boolean oneElementPerLine = c.getFormattingComplexity() > options.oneElementPerLineThreshold;
-
-        if (oneElementPerLine && options.lineBreaksBeforeOpeningBrace > 0)
-        {
-            appendMultiple('\n', options.lineBreaksBeforeOpeningBrace);
-            appendIndent();
-        }
-        else if (options.spacesBeforeOpeningBrace > 0)
-        {
-            appendMultiple(' ', options.spacesBeforeOpeningBrace);
-        }
-        builder.append('[');
-        if (oneElementPerLine && options.lineBreaksAfterOpeningBrace > 0)
-        {
-            appendMultiple('\n', options.lineBreaksAfterOpeningBrace);
-        }
-        else if (options.spacesAfterOpeningBrace > 0)
-        {
-            appendMultiple(' ', options.spacesAfterOpeningBrace);
-        }
-
-        pushIndent();
-        incIndent();
-
-        boolean first = true;
-        for (int i = 0; i < c.size(); i++)
-        {
-            final GddlElement<?> e = c.get(i);
-            pushIndent();
-
-            if (first && (!oneElementPerLine || options.lineBreaksAfterOpeningBrace == 0))
-            {
-                clearIndent();
-            }
-            else if (!first)
-            {
-                if (oneElementPerLine)
-                {
-                    builder.append("\n");
-                }
-                else if (options.spacesAfterComma > 0)
-                {
-                    appendMultiple(' ', options.spacesAfterComma);
-                }
-
-                if (!oneElementPerLine)
-                    clearIndent();
-            }
-
-            boolean hasNext1 = (i + 1) < c.size();
-
-            formatComment(e);
-            appendIndent();
-            formatElement(e, hasNext1);
-
-            if (hasNext1 && ((!e.isMap() && !e.isList()) || !options.omitCommaAfterClosingBrace))
-            {
-                appendMultiple(' ', options.spacesBeforeComma);
-                builder.append(',');
-            }
-
-            first = false;
-            popIndent();
-        }
-
-        if (c.hasTrailingComment() && options.writeComments)
-            formatComment(c.getTrailingComment());
+        final GddlElement<?> collection;
+        final GddlMap map;
+        final GddlList list;
+        final List<String> keys;
+        final int size;
+        final boolean hasNext;
+        final boolean oneElementPerLine;
+        int index;
+        boolean hasNextItem;
 
-        popIndent();
-        if (oneElementPerLine && options.lineBreaksBeforeClosingBrace > 0)
-        {
-            appendMultiple('\n', options.lineBreaksBeforeClosingBrace);
-            appendIndent();
-        }
-        else if (options.spacesBeforeClosingBrace > 0)
+        OpenCollection(GddlElement<?> collection, boolean hasNext, boolean oneElementPerLine)
         {
-            appendMultiple(' ', options.spacesBeforeClosingBrace);
-        }
-
-        builder.append(']');
-        if (!hasNext0 || options.omitCommaAfterClosingBrace)
-        {
-            if (oneElementPerLine && options.lineBreaksAfterClosingBrace > 0)
+            this.collection = collection;
+            this.hasNext = hasNext;
+            this.oneElementPerLine = oneElementPerLine;
+            if (collection.isMap())
             {
-                appendMultiple('\n', options.lineBreaksAfterClosingBrace);
+                this.map = collection.asMap();
+                this.list = null;
+                this.keys = new ArrayList<>(map.keySet());
+                if (options.sortMapKeys) keys.sort(String::compareTo);
+                this.size = keys.size();
             }
-            else if (options.spacesAfterClosingBrace > 0)
+            else
             {
-                appendMultiple(' ', options.spacesAfterClosingBrace);
+                this.map = null;
+                this.list = collection.asList();
+                this.keys = null;
+                this.size = list.size();
             }
         }
-
-        popIndent();
     }
     //endregion
 }
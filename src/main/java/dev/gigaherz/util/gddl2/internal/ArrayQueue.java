@@ -2,6 +2,7 @@ package dev.gigaherz.util.gddl2.internal;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -90,6 +91,13 @@ public class ArrayQueue<T>
         return result;
     }
 
+    public void clear()
+    {
+        Arrays.fill(buffer, null);
+        start = 0;
+        count = 0;
+    }
+
     public T get(int index)
     {
         if (index >= size())
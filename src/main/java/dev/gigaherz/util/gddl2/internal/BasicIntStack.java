@@ -30,5 +30,20 @@ public class BasicIntStack
     {
         return buffer[--count];
     }
+
+    public int peek()
+    {
+        return buffer[count - 1];
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public int[] toArray()
+    {
+        return Arrays.copyOf(buffer, count);
+    }
 }
 
@@ -0,0 +1,288 @@
+package dev.gigaherz.util.gddl2.internal;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Immutable hash map stored as a hash array mapped trie. Each level of the trie uses five bits of the hash
+ * to pick a child, and only stores the children that exist, as given by a bitmap.
+ * Updates return a new map that shares every node outside the path to the changed key with this one.
+ * Null keys and values are not supported.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public final class PersistentHashMap<K, V>
+{
+    //region API
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty()
+    {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(Object key)
+    {
+        return root != null ? (V) root.find(0, key.hashCode(), key) : null;
+    }
+
+    public boolean containsKey(Object key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * @return A map with the key associated to the value, replacing any previous value.
+     */
+    public PersistentHashMap<K, V> with(K key, V value)
+    {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+
+        var added = new boolean[1];
+        var start = root != null ? root : BitmapNode.EMPTY;
+        var newRoot = start.put(0, key.hashCode(), key, value, added);
+        if (newRoot == root)
+            return this;
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * @return A map without the key.
+     */
+    public PersistentHashMap<K, V> without(Object key)
+    {
+        if (root == null)
+            return this;
+        var newRoot = root.remove(0, key.hashCode(), key);
+        if (newRoot == root)
+            return this;
+        return newRoot != null ? new PersistentHashMap<>(newRoot, size - 1) : empty();
+    }
+    //endregion
+
+    //region Implementation
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(@Nullable Node root, int size)
+    {
+        this.root = root;
+        this.size = size;
+    }
+
+    private static abstract class Node
+    {
+        @Nullable
+        abstract Object find(int shift, int hash, Object key);
+
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * @return The node without the key, or null if the node would be left empty.
+         */
+        @Nullable
+        abstract Node remove(int shift, int hash, Object key);
+    }
+
+    /**
+     * Node holding the children whose hashes have the bits of their position in the bitmap.
+     * The array holds a pair of slots for each child: a key and its value, or null and a node one level down.
+     */
+    private static final class BitmapNode extends Node
+    {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array)
+        {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit)
+        {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key)
+        {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0)
+                return null;
+            int index = index(bit);
+            var k = array[2 * index];
+            var v = array[2 * index + 1];
+            if (k == null)
+                return ((Node) v).find(shift + BITS, hash, key);
+            return key.equals(k) ? v : null;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added)
+        {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = index(bit);
+            if ((bitmap & bit) != 0)
+            {
+                var k = array[2 * index];
+                var v = array[2 * index + 1];
+                if (k == null)
+                {
+                    var child = ((Node) v).put(shift + BITS, hash, key, value, added);
+                    return child == v ? this : new BitmapNode(bitmap, replaced(array, 2 * index + 1, child));
+                }
+                if (key.equals(k))
+                    return value == v ? this : new BitmapNode(bitmap, replaced(array, 2 * index + 1, value));
+
+                added[0] = true;
+                var split = split(shift + BITS, k, v, hash, key, value);
+                var newArray = replaced(array, 2 * index, null);
+                newArray[2 * index + 1] = split;
+                return new BitmapNode(bitmap, newArray);
+            }
+
+            added[0] = true;
+            var newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * index);
+            newArray[2 * index] = key;
+            newArray[2 * index + 1] = value;
+            System.arraycopy(array, 2 * index, newArray, 2 * index + 2, array.length - 2 * index);
+            return new BitmapNode(bitmap | bit, newArray);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key)
+        {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0)
+                return this;
+            int index = index(bit);
+            var k = array[2 * index];
+            var v = array[2 * index + 1];
+            if (k == null)
+            {
+                var child = ((Node) v).remove(shift + BITS, hash, key);
+                if (child == v)
+                    return this;
+                if (child != null)
+                    return new BitmapNode(bitmap, replaced(array, 2 * index + 1, child));
+            }
+            else if (!key.equals(k))
+            {
+                return this;
+            }
+
+            if (bitmap == bit)
+                return null;
+            var newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * index);
+            System.arraycopy(array, 2 * index + 2, newArray, 2 * index, newArray.length - 2 * index);
+            return new BitmapNode(bitmap ^ bit, newArray);
+        }
+
+        /**
+         * Builds the node that holds two keys which were found at the same position of the level above.
+         */
+        private static Node split(int shift, Object key1, Object value1, int hash2, Object key2, Object value2)
+        {
+            int hash1 = key1.hashCode();
+            if (hash1 == hash2)
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            var ignored = new boolean[1];
+            return EMPTY.put(shift, hash1, key1, value1, ignored).put(shift, hash2, key2, value2, ignored);
+        }
+    }
+
+    /**
+     * Node holding keys whose hashes are all identical, compared one by one.
+     */
+    private static final class CollisionNode extends Node
+    {
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array)
+        {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key)
+        {
+            for (int i = 0; i < array.length; i += 2)
+            {
+                if (key.equals(array[i]))
+                    return i;
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key)
+        {
+            int index = indexOf(key);
+            return index >= 0 ? array[index + 1] : null;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added)
+        {
+            if (hash != this.hash)
+            {
+                // Nest this node under a bitmap node, which will then tell the two hashes apart.
+                var parent = new BitmapNode(1 << ((this.hash >>> shift) & MASK), new Object[]{null, this});
+                return parent.put(shift, hash, key, value, added);
+            }
+
+            int index = indexOf(key);
+            if (index >= 0)
+                return array[index + 1] == value ? this : new CollisionNode(hash, replaced(array, index + 1, value));
+
+            added[0] = true;
+            var newArray = Arrays.copyOf(array, array.length + 2);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key)
+        {
+            int index = indexOf(key);
+            if (index < 0)
+                return this;
+            if (array.length == 2)
+                return null;
+            var newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 2, newArray, index, newArray.length - index);
+            return new CollisionNode(hash, newArray);
+        }
+    }
+
+    private static Object[] replaced(Object[] array, int index, Object value)
+    {
+        var result = array.clone();
+        result[index] = value;
+        return result;
+    }
+    //endregion
+}
@@ -0,0 +1,246 @@
+package dev.gigaherz.util.gddl2.internal;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list stored as a tree of 32-wide chunks, plus a separate tail chunk for the last items.
+ * Updates return a new vector that shares all the untouched chunks with this one, so appending,
+ * replacing and removing the last item copy at most one chunk per level of the tree.
+ * The tree is never more than a handful of levels deep, so reads are effectively constant-time.
+ *
+ * @param <T> The type of the items
+ */
+public final class PersistentVector<T> extends AbstractList<T> implements RandomAccess
+{
+    //region API
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> empty()
+    {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    public static <T> PersistentVector<T> copyOf(Collection<? extends T> items)
+    {
+        PersistentVector<T> vector = empty();
+        for (var item : items)
+        {
+            vector = vector.append(item);
+        }
+        return vector;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index)
+    {
+        Objects.checkIndex(index, size);
+        return (T) chunkFor(index)[index & MASK];
+    }
+
+    /**
+     * @return A vector with the item added at the end.
+     */
+    public PersistentVector<T> append(T item)
+    {
+        int tailSize = size - tailOffset();
+        if (tailSize < WIDTH)
+        {
+            var newTail = Arrays.copyOf(tail, tailSize + 1);
+            newTail[tailSize] = item;
+            return new PersistentVector<>(size + 1, shift, root, newTail);
+        }
+
+        // The tail is full: move it into the tree, growing the tree by one level if the root is full too.
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift))
+        {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += BITS;
+        }
+        else
+        {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<>(size + 1, newShift, newRoot, new Object[]{item});
+    }
+
+    /**
+     * @return A vector with the item at the given index replaced.
+     */
+    public PersistentVector<T> with(int index, T item)
+    {
+        Objects.checkIndex(index, size);
+        if (index >= tailOffset())
+        {
+            var newTail = tail.clone();
+            newTail[index & MASK] = item;
+            return new PersistentVector<>(size, shift, root, newTail);
+        }
+        return new PersistentVector<>(size, shift, replace(shift, root, index, item), tail);
+    }
+
+    /**
+     * @return A vector without the last item.
+     */
+    public PersistentVector<T> withoutLast()
+    {
+        if (size == 0)
+            throw new IllegalStateException("The vector is empty.");
+        if (size == 1)
+            return empty();
+
+        if (size - tailOffset() > 1)
+            return new PersistentVector<>(size - 1, shift, root, Arrays.copyOf(tail, tail.length - 1));
+
+        // The tail would become empty: the last chunk in the tree becomes the new tail.
+        var newTail = chunkFor(size - 2);
+        var newRoot = popTail(shift, root);
+        int newShift = shift;
+        if (newRoot == null)
+            newRoot = EMPTY_NODE;
+        if (shift > BITS && newRoot[1] == null)
+        {
+            newRoot = (Object[]) newRoot[0];
+            newShift -= BITS;
+        }
+        return new PersistentVector<>(size - 1, newShift, newRoot, newTail);
+    }
+
+    /**
+     * @return A vector without the item at the given index. Removing any item other than the last one
+     * rebuilds the items after it.
+     */
+    public PersistentVector<T> without(int index)
+    {
+        Objects.checkIndex(index, size);
+        if (index == size - 1)
+            return withoutLast();
+
+        var result = this;
+        for (int i = size - 1; i >= index; i--)
+        {
+            result = result.withoutLast();
+        }
+        for (int i = index + 1; i < size; i++)
+        {
+            result = result.append(get(i));
+        }
+        return result;
+    }
+    //endregion
+
+    //region Implementation
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final Object[] EMPTY_NODE = new Object[WIDTH];
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(0, BITS, EMPTY_NODE, new Object[0]);
+
+    private final int size;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(int size, int shift, Object[] root, Object[] tail)
+    {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    private int tailOffset()
+    {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] chunkFor(int index)
+    {
+        if (index >= tailOffset())
+            return tail;
+
+        var node = root;
+        for (int level = shift; level > 0; level -= BITS)
+        {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode)
+    {
+        int index = ((size - 1) >>> level) & MASK;
+        var result = parent.clone();
+        if (level == BITS)
+        {
+            result[index] = tailNode;
+        }
+        else
+        {
+            var child = (Object[]) parent[index];
+            result[index] = child != null ? pushTail(level - BITS, child, tailNode) : newPath(level - BITS, tailNode);
+        }
+        return result;
+    }
+
+    private static Object[] newPath(int level, Object[] node)
+    {
+        if (level == 0)
+            return node;
+        var result = new Object[WIDTH];
+        result[0] = newPath(level - BITS, node);
+        return result;
+    }
+
+    private static Object[] replace(int level, Object[] node, int index, Object item)
+    {
+        var result = node.clone();
+        if (level == 0)
+        {
+            result[index & MASK] = item;
+        }
+        else
+        {
+            int child = (index >>> level) & MASK;
+            result[child] = replace(level - BITS, (Object[]) node[child], index, item);
+        }
+        return result;
+    }
+
+    /**
+     * @return The node without its last chunk, or null if nothing would be left in it.
+     */
+    private Object[] popTail(int level, Object[] node)
+    {
+        int index = ((size - 2) >>> level) & MASK;
+        if (level > BITS)
+        {
+            var child = popTail(level - BITS, (Object[]) node[index]);
+            if (child == null && index == 0)
+                return null;
+            var result = node.clone();
+            result[index] = child;
+            return result;
+        }
+        if (index == 0)
+            return null;
+        var result = node.clone();
+        result[index] = null;
+        return result;
+    }
+    //endregion
+}
@@ -0,0 +1,136 @@
+package dev.gigaherz.util.gddl2.internal;
+
+import dev.gigaherz.util.gddl2.queries.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tree of the parts of a document that a set of queries can reach, used to skip the rest of the document while parsing.
+ * Each node stands for an element: either the whole element is needed, or only the children listed in it.
+ * The selection is conservative: it can contain more than the queries will end up matching, but never less.
+ */
+public final class QuerySelection
+{
+    /**
+     * Builds the selection needed to evaluate all the given queries against the root of a document.
+     *
+     * @param queries The queries
+     * @return The selection for the root element
+     */
+    public static QuerySelection of(Query... queries)
+    {
+        var root = new QuerySelection();
+        for (var query : queries)
+        {
+            root.add(query);
+        }
+        return root;
+    }
+
+    /**
+     * @return True if the whole element is needed, including all of its children.
+     */
+    public boolean isWhole()
+    {
+        return whole;
+    }
+
+    /**
+     * Gets the selection for the child of a map.
+     *
+     * @param key The key of the child
+     * @return The selection for the child, or null if the child is not needed.
+     */
+    @Nullable
+    public QuerySelection key(String key)
+    {
+        return keys.get(key);
+    }
+
+    /**
+     * Gets the selection for an item of a list. Ranges counted from the end of the list are assumed to include every item,
+     * since the size of the list is not known until its end is reached.
+     *
+     * @param index The index of the item
+     * @return The selection for the item, or null if the item is not needed.
+     */
+    @Nullable
+    public QuerySelection item(int index)
+    {
+        QuerySelection result = null;
+        for (var entry : ranges)
+        {
+            var range = entry.range();
+            var start = range.start();
+            var end = range.end();
+            if (!start.fromEnd() && index < start.value())
+                continue;
+            if (!end.fromEnd() && index >= end.value())
+                continue;
+
+            result = result == null ? entry.selection() : merge(result, entry.selection());
+        }
+        return result;
+    }
+
+    //region Implementation
+    private boolean whole;
+    private final Map<String, QuerySelection> keys = new HashMap<>();
+    private final List<RangeSelection> ranges = new ArrayList<>();
+
+    private record RangeSelection(Range range, QuerySelection selection)
+    {
+    }
+
+    private void add(Query query)
+    {
+        List<QuerySelection> path = new ArrayList<>();
+        path.add(this);
+
+        for (var component : query.pathComponents())
+        {
+            var current = path.get(path.size() - 1);
+            if (component instanceof MapQueryComponent map)
+            {
+                path.add(current.keys.computeIfAbsent(map.getName(), k -> new QuerySelection()));
+            }
+            else if (component instanceof ListQueryComponent list)
+            {
+                var child = new QuerySelection();
+                current.ranges.add(new RangeSelection(list.getRange(), child));
+                path.add(child);
+            }
+            else if (component instanceof ParentQueryComponent)
+            {
+                if (path.size() == 1)
+                {
+                    // Going above the root: keep everything.
+                    whole = true;
+                    return;
+                }
+                path.remove(path.size() - 1);
+            }
+        }
+
+        path.get(path.size() - 1).whole = true;
+    }
+
+    private static QuerySelection merge(QuerySelection a, QuerySelection b)
+    {
+        var result = new QuerySelection();
+        result.whole = a.whole || b.whole;
+        result.keys.putAll(a.keys);
+        for (var entry : b.keys.entrySet())
+        {
+            result.keys.merge(entry.getKey(), entry.getValue(), QuerySelection::merge);
+        }
+        result.ranges.addAll(a.ranges);
+        result.ranges.addAll(b.ranges);
+        return result;
+    }
+    //endregion
+}
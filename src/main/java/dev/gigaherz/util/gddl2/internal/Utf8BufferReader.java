@@ -0,0 +1,133 @@
+package dev.gigaherz.util.gddl2.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Minimal reader that decodes UTF-8 directly out of a byte buffer, such as a memory-mapped file.
+ * Runs of ASCII bytes are widened straight into the destination, and only the non-ASCII runs go
+ * through a {@link CharsetDecoder}. Malformed input is reported as a {@link java.nio.charset.MalformedInputException},
+ * the same as {@link java.nio.file.Files#newBufferedReader} would.
+ */
+public final class Utf8BufferReader extends java.io.Reader
+{
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private final ByteBuffer input;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    /**
+     * Holds the second half of a surrogate pair that did not fit in the destination.
+     */
+    private final CharBuffer spill = CharBuffer.allocate(2).flip();
+
+    public Utf8BufferReader(ByteBuffer input)
+    {
+        this.input = input;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException
+    {
+        Objects.checkFromIndexSize(off, len, cbuf.length);
+        if (len == 0)
+            return 0;
+
+        int count = 0;
+        while (count < len && spill.hasRemaining())
+        {
+            cbuf[off + count++] = spill.get();
+        }
+
+        final ByteBuffer input = this.input;
+        final int lim = input.limit();
+        int pos = input.position();
+        while (count < len && pos < lim)
+        {
+            // Eight ASCII bytes at a time
+            while (len - count >= 8 && lim - pos >= 8)
+            {
+                long word = input.getLong(pos);
+                if ((word & HIGH_BITS) != 0)
+                    break;
+                int o = off + count;
+                for (int i = 0; i < 8; i++)
+                {
+                    cbuf[o + i] = (char) ((word >>> (56 - 8 * i)) & 0xFF);
+                }
+                count += 8;
+                pos += 8;
+            }
+
+            if (count == len || pos == lim)
+                break;
+
+            byte b = input.get(pos);
+            if (b >= 0)
+            {
+                cbuf[off + count++] = (char) b;
+                pos++;
+                continue;
+            }
+
+            // Every byte of a multibyte sequence has the high bit set, so the run ends at the next ASCII byte.
+            int runEnd = pos + 1;
+            while (runEnd < lim && input.get(runEnd) < 0)
+            {
+                runEnd++;
+            }
+
+            ByteBuffer in = input.slice(pos, runEnd - pos);
+            CharBuffer out = CharBuffer.wrap(cbuf, off + count, len - count);
+            decoder.reset();
+            check(decoder.decode(in, out, true));
+            int produced = out.position() - (off + count);
+            count += produced;
+
+            if (in.hasRemaining())
+            {
+                if (produced == 0)
+                {
+                    // Only room for one char, but the next codepoint needs a surrogate pair.
+                    spill.clear();
+                    decoder.reset();
+                    check(decoder.decode(in, spill, true));
+                    spill.flip();
+                    cbuf[off + count++] = spill.get();
+                }
+                pos += in.position();
+                break;
+            }
+
+            pos = runEnd;
+        }
+        input.position(pos);
+
+        return count == 0 ? -1 : count;
+    }
+
+    private static void check(CoderResult result) throws IOException
+    {
+        if (result.isError())
+            result.throwException();
+    }
+
+    @Override
+    public boolean ready()
+    {
+        return spill.hasRemaining() || input.hasRemaining();
+    }
+
+    @Override
+    public void close()
+    {
+    }
+}
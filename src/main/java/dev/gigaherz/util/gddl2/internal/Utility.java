@@ -141,167 +141,93 @@ public final class Utility
         return Utility.isPrintable(c) && !Utility.isControl(c) && c != delimiter && c != '\\';
     }
 
-    private static final int UE_QUOTE = 1;
-    private static final int UE_ESCAPE = 2;
-    private static final int UE_ESCAPE_LB = 3;
-    private static final int UE_ESCAPE_HEX = 5;
-    private static final int UE_ESCAPE_END = 6;
-
     /**
      * Processes any escape sequences in the string, replacing them with the codepoints those sequences represent.
+     * The runs of text between escape sequences are copied in bulk.
      *
      * @param text The text to unescape
      * @return The unescaped string
      */
     public static String unescapeString(String text)
     {
-        StringBuilder sb = new StringBuilder();
+        final int length = text.length();
 
-        char startQuote = (char) 0;
+        int i = 0;
+        while (i < length && text.charAt(i) != '"' && text.charAt(i) != '\'')
+        {
+            i++;
+        }
+        if (i == length)
+            throw new IllegalArgumentException("Invalid string literal");
 
-        int state = UE_QUOTE;
-        int escapeAcc = 0;
-        int escapeDigits = 0;
-        int escapeMax = 0;
+        final char startQuote = text.charAt(i);
+        StringBuilder sb = new StringBuilder(length);
+        sb.append(text, 0, i++);
 
-        for (char c : text.toCharArray())
+        while (true)
         {
-            if (startQuote != 0)
+            int runStart = i;
+            char c = 0;
+            while (i < length && (c = text.charAt(i)) != startQuote && c != '\\')
             {
-                if (state == UE_ESCAPE_HEX)
-                {
-                    if (escapeDigits == escapeMax)
-                    {
-                        sb.append((char) escapeAcc);
-                        state = UE_QUOTE;
-                    }
-                    else if (Utility.isDigit(c))
-                    {
-                        escapeAcc = (escapeAcc << 4) + (c - '0');
-                    }
-                    else if ((escapeDigits < escapeMax) && ((c >= 'a') && (c <= 'f')))
-                    {
-                        escapeAcc = (escapeAcc << 4) + 10 + (c - 'a');
-                    }
-                    else if ((escapeDigits < escapeMax) && ((c >= 'A') && (c <= 'F')))
-                    {
-                        escapeAcc = (escapeAcc << 4) + 10 + (c - 'A');
-                    }
-                    else
-                    {
-                        sb.append((char) escapeAcc);
-                        state = UE_QUOTE;
-                    }
-                    escapeDigits++;
-                }
+                i++;
+            }
+            if (i == length)
+                throw new IllegalArgumentException("Invalid string literal");
+
+            sb.append(text, runStart, i++);
+            if (c == startQuote)
+                return sb.toString();
 
-                if (state == UE_ESCAPE_LB)
+            if (i == length)
+                throw new IllegalArgumentException("Invalid string literal");
+
+            c = text.charAt(i++);
+            switch (c)
+            {
+                case '"', '\'', '\\' -> sb.append(c);
+                case '0' -> sb.append('\0');
+                case 'b' -> sb.append('\b');
+                case 't' -> sb.append('\t');
+                case 'f' -> sb.append('\f');
+                case 'r' -> sb.append('\r');
+                case 'n', '\n' -> sb.append('\n');
+                case '\r' ->
                 {
-                    if (c == '\n')
+                    sb.append('\r');
+                    if (i < length && text.charAt(i) == '\n')
                     {
                         sb.append('\n');
-                        state = UE_ESCAPE_END;
+                        i++;
                     }
-                    else
-                        state = UE_QUOTE;
-                }
-                else if (state == UE_ESCAPE_END)
-                {
-                    state = UE_QUOTE;
                 }
-
-                if (state == UE_ESCAPE)
+                case 'x', 'u' ->
                 {
-                    switch (c)
+                    int escapeMax = c == 'x' ? 2 : 4;
+                    int escapeAcc = 0;
+                    for (int digits = 0; digits < escapeMax && i < length; digits++, i++)
                     {
-                        case '"':
-                            sb.append('"');
-                            state = UE_ESCAPE_END;
-                            break;
-                        case '\'':
-                            sb.append('\'');
-                            state = UE_ESCAPE_END;
-                            break;
-                        case '\\':
-                            sb.append('\\');
-                            state = UE_ESCAPE_END;
-                            break;
-                        case '0':
-                            sb.append('\0');
-                            state = UE_ESCAPE_END;
-                            break;
-                        case 'b':
-                            sb.append('\b');
-                            state = UE_ESCAPE_END;
-                            break;
-                        case 't':
-                            sb.append('\t');
-                            state = UE_ESCAPE_END;
-                            break;
-                        case 'f':
-                            sb.append('\f');
-                            state = UE_ESCAPE_END;
+                        int digit = hexDigit(text.charAt(i));
+                        if (digit < 0)
                             break;
-                        case 'r':
-                            sb.append('\r');
-                            state = UE_ESCAPE_END;
-                            break;
-                        case 'n':
-                        case '\n':
-                            sb.append('\n');
-                            state = UE_ESCAPE_END;
-                            break;
-                        case '\r':
-                            sb.append('\r');
-                            state = UE_ESCAPE_LB;
-                            break;
-                        case 'x':
-                            state = UE_ESCAPE_HEX;
-                            escapeAcc = 0;
-                            escapeDigits = 0;
-                            escapeMax = 2;
-                            break;
-                        case 'u':
-                            state = UE_ESCAPE_HEX;
-                            escapeAcc = 0;
-                            escapeDigits = 0;
-                            escapeMax = 4;
-                            break;
-                    }
-                }
-
-                if (state == UE_QUOTE)
-                {
-                    if (c == startQuote)
-                        return sb.toString();
-                    if (c == '\\')
-                    {
-                        state = UE_ESCAPE;
-                    }
-                    else
-                    {
-                        sb.append(c);
+                        escapeAcc = (escapeAcc << 4) + digit;
                     }
+                    sb.append((char) escapeAcc);
                 }
-            }
-            else
-            {
-                switch (c)
-                {
-                    case '"':
-                        startQuote = '"';
-                        break;
-                    case '\'':
-                        startQuote = '\'';
-                        break;
-                    default:
-                        sb.append(c);
-                        break;
-                }
+                default -> throw new IllegalArgumentException(String.format("Unknown escape sequence \\%c", c));
             }
         }
+    }
 
-        throw new IllegalArgumentException("Invalid string literal");
+    private static int hexDigit(char c)
+    {
+        if (c >= '0' && c <= '9')
+            return c - '0';
+        if (c >= 'a' && c <= 'f')
+            return 10 + (c - 'a');
+        if (c >= 'A' && c <= 'F')
+            return 10 + (c - 'A');
+        return -1;
     }
 
     private static final int NON_PRINTABLE =
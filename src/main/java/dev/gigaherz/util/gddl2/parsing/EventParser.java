@@ -0,0 +1,99 @@
+package dev.gigaherz.util.gddl2.parsing;
+
+import dev.gigaherz.util.gddl2.exceptions.ParserException;
+
+import java.io.IOException;
+
+/**
+ * Parses a document and reports its contents to a {@link GddlEventHandler} as they are found,
+ * without allocating any of the structure classes. This is a push-style adapter over {@link GddlStreamReader}.
+ */
+public class EventParser implements ContextProvider, AutoCloseable
+{
+    //region API
+    public EventParser(TokenProvider lexer)
+    {
+        this.lexer = lexer;
+        this.reader = new GddlStreamReader(lexer);
+    }
+
+    /**
+     * @return The lexer used by this parser
+     */
+    public TokenProvider getLexer()
+    {
+        return lexer;
+    }
+
+    /**
+     * Parses the whole file, reporting every element to the handler.
+     *
+     * @param handler The handler that receives the events.
+     * @throws IOException     When accessing the source stream.
+     * @throws ParserException When parsing
+     */
+    public void parse(GddlEventHandler handler) throws IOException, ParserException
+    {
+        handler.startDocument();
+
+        StreamEvent event;
+        while ((event = reader.next()) != StreamEvent.END_DOCUMENT)
+        {
+            switch (event)
+            {
+                case END_MAP -> handler.endMap();
+                case END_LIST -> handler.endList();
+                default ->
+                {
+                    String key = reader.currentKey();
+                    if (key != null)
+                        handler.key(key);
+
+                    switch (event)
+                    {
+                        case START_MAP -> handler.startMap(reader.typeName());
+                        case START_LIST -> handler.startList();
+                        case NULL -> handler.nullValue();
+                        case BOOLEAN -> handler.value(reader.booleanValue());
+                        case INTEGER -> handler.value(reader.longValue());
+                        case DECIMAL -> handler.value(reader.doubleValue());
+                        case STRING -> handler.value(reader.stringValue());
+                        case REFERENCE -> handler.reference(reader.referenceValue());
+                    }
+                }
+            }
+        }
+
+        handler.endDocument();
+    }
+    //endregion
+
+    //region Implementation
+    private final TokenProvider lexer;
+    private final GddlStreamReader reader;
+    //endregion
+
+    //region toString
+    @Override
+    public String toString()
+    {
+        return String.format("{EventParser lexer=%s}", lexer);
+    }
+    //endregion
+
+    //region ContextProvider
+    @Override
+    public ParsingContext getParsingContext()
+    {
+        return lexer.getParsingContext();
+    }
+    //endregion
+
+    //region AutoCloseable
+    @Override
+    public void close() throws Exception
+    {
+        lexer.close();
+    }
+    //endregion
+}
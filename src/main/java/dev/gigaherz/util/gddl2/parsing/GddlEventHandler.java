@@ -0,0 +1,116 @@
+package dev.gigaherz.util.gddl2.parsing;
+
+import dev.gigaherz.util.gddl2.queries.Query;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Receives the contents of a document as they are parsed by an {@link EventParser}, without a tree being built.
+ * Every callback does nothing by default, so implementations only need to override the ones they care about.
+ */
+public interface GddlEventHandler
+{
+    /**
+     * Called once, before any other callback.
+     */
+    default void startDocument()
+    {
+    }
+
+    /**
+     * Called once, after the root element has been completely reported.
+     */
+    default void endDocument()
+    {
+    }
+
+    /**
+     * Called when a map begins. Its entries follow, each as a call to {@link #key(String)} followed by the value.
+     *
+     * @param typeName The type name of the map, or null if the map has none.
+     */
+    default void startMap(@Nullable String typeName)
+    {
+    }
+
+    /**
+     * Called before the value of each map entry.
+     *
+     * @param name The key of the entry, with any quotes and escape sequences already processed.
+     */
+    default void key(String name)
+    {
+    }
+
+    /**
+     * Called when the map that began with the matching {@link #startMap(String)} ends.
+     */
+    default void endMap()
+    {
+    }
+
+    /**
+     * Called when a list begins. Its items follow, in order.
+     */
+    default void startList()
+    {
+    }
+
+    /**
+     * Called when the list that began with the matching {@link #startList()} ends.
+     */
+    default void endList()
+    {
+    }
+
+    /**
+     * Called for a null value, written as either `null` or `nil`.
+     */
+    default void nullValue()
+    {
+    }
+
+    /**
+     * Called for a boolean value.
+     *
+     * @param value The value
+     */
+    default void value(boolean value)
+    {
+    }
+
+    /**
+     * Called for an integer value, in either decimal or hexadecimal notation.
+     *
+     * @param value The value
+     */
+    default void value(long value)
+    {
+    }
+
+    /**
+     * Called for a decimal value.
+     *
+     * @param value The value
+     */
+    default void value(double value)
+    {
+    }
+
+    /**
+     * Called for a string value.
+     *
+     * @param value The value, with the quotes and escape sequences already processed.
+     */
+    default void value(String value)
+    {
+    }
+
+    /**
+     * Called for a reference. References are not resolved, since there is no tree to resolve them against.
+     *
+     * @param query The query the reference points to
+     */
+    default void reference(Query query)
+    {
+    }
+}
@@ -0,0 +1,90 @@
+package dev.gigaherz.util.gddl2.parsing;
+
+import dev.gigaherz.util.gddl2.exceptions.ParserException;
+import dev.gigaherz.util.gddl2.structure.GddlDocument;
+
+import java.io.IOException;
+
+/**
+ * Parses many in-memory documents, one after another, reusing the same reader, lexer and parser for all of them.
+ * Their buffers are kept between documents, so that parsing a small document doesn't need to allocate them again.
+ * <p>
+ * An instance must only be used by one thread at a time. {@link #parseShared(CharSequence, String)} keeps one instance
+ * for each thread, and can be called from any thread.
+ */
+public class GddlParser
+{
+    //region API
+    public GddlParser()
+    {
+        this(WhitespaceMode.PRESERVE_ALL_WHITESPACE);
+    }
+
+    public GddlParser(WhitespaceMode whitespaceMode)
+    {
+        this.reader = new Reader("", "UNKNOWN");
+        this.lexer = new Lexer(reader, whitespaceMode);
+        this.parser = new Parser(lexer);
+    }
+
+    /**
+     * Parses a whole document. The text is read directly, without copying it.
+     *
+     * @param text       The text to parse.
+     * @param sourceName The filename to display in parse errors.
+     * @return The document
+     * @throws IOException     When accessing the source stream.
+     * @throws ParserException When parsing
+     */
+    public GddlDocument parse(CharSequence text, String sourceName) throws IOException, ParserException
+    {
+        start(text, sourceName);
+        try
+        {
+            return parser.parse(false);
+        }
+        finally
+        {
+            // Don't hold on to the text until the next document comes along.
+            start("", "UNKNOWN");
+        }
+    }
+
+    /**
+     * Parses a whole document, using the instance that belongs to the calling thread.
+     *
+     * @param text       The text to parse.
+     * @param sourceName The filename to display in parse errors.
+     * @return The document
+     * @throws IOException     When accessing the source stream.
+     * @throws ParserException When parsing
+     */
+    public static GddlDocument parseShared(CharSequence text, String sourceName) throws IOException, ParserException
+    {
+        return SHARED.get().parse(text, sourceName);
+    }
+    //endregion
+
+    //region Implementation
+    private static final ThreadLocal<GddlParser> SHARED = ThreadLocal.withInitial(GddlParser::new);
+
+    private final Reader reader;
+    private final Lexer lexer;
+    private final Parser parser;
+
+    private void start(CharSequence text, String sourceName)
+    {
+        reader.reset(text, sourceName);
+        lexer.reset();
+        parser.reset();
+    }
+    //endregion
+
+    //region toString
+    @Override
+    public String toString()
+    {
+        return String.format("{GddlParser parser=%s}", parser);
+    }
+    //endregion
+}
@@ -0,0 +1,394 @@
+package dev.gigaherz.util.gddl2.parsing;
+
+import dev.gigaherz.util.gddl2.exceptions.ParserException;
+import dev.gigaherz.util.gddl2.internal.BasicIntStack;
+import dev.gigaherz.util.gddl2.internal.Utility;
+import dev.gigaherz.util.gddl2.queries.Query;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pull-based reader that walks a document one element at a time, at the pace of the caller.
+ * Only the chain of open containers is remembered, so documents of any size can be read in constant memory,
+ * as long as they are not too deeply nested.
+ * <p>
+ * Each call to {@link #next()} advances to the next event, and the accessors describe the element it reported.
+ * Elements inside a map carry the key they were found under, available from {@link #currentKey()}.
+ */
+public class GddlStreamReader implements ContextProvider, AutoCloseable
+{
+    //region API
+    public GddlStreamReader(TokenProvider lexer)
+    {
+        this.lexer = lexer;
+    }
+
+    /**
+     * @return The lexer used by this reader
+     */
+    public TokenProvider getLexer()
+    {
+        return lexer;
+    }
+
+    /**
+     * Advances to the next event in the document.
+     *
+     * @return The kind of event reached.
+     * @throws IOException           When accessing the source stream.
+     * @throws ParserException       When parsing
+     * @throws IllegalStateException If the end of the document had already been reached.
+     */
+    public StreamEvent next() throws IOException, ParserException
+    {
+        if (event == StreamEvent.END_DOCUMENT)
+            throw new IllegalStateException("The end of the document has already been reached.");
+
+        typeName = null;
+
+        if (containers.size() == 0)
+        {
+            currentKey = null;
+            if (event == null)
+                return element();
+
+            popExpected(TokenType.END);
+            return event = StreamEvent.END_DOCUMENT;
+        }
+
+        boolean inMap = containers.peek() == MAP;
+        TokenType closing = inMap ? TokenType.R_BRACE : TokenType.R_BRACKET;
+
+        if (afterElement && lexer.peek() != closing)
+        {
+            if (!finishedWithRBrace || lexer.peek() == TokenType.COMMA)
+            {
+                popExpected(TokenType.COMMA);
+            }
+        }
+
+        if (lexer.peek() == closing)
+        {
+            lexer.pop();
+            return endContainer();
+        }
+
+        finishedWithRBrace = false;
+
+        if (inMap)
+        {
+            Token name = popExpected(TokenType.IDENTIFIER, TokenType.STRING_LITERAL);
+            currentKey = name.type == TokenType.STRING_LITERAL ? stringValue(name) : name.getText();
+
+            popExpected(TokenType.EQUAL_SIGN, TokenType.COLON);
+        }
+        else
+        {
+            currentKey = null;
+        }
+
+        return element();
+    }
+
+    /**
+     * @return True if there are more events to read, which is until {@link StreamEvent#END_DOCUMENT} is reached.
+     */
+    public boolean hasNext()
+    {
+        return event != StreamEvent.END_DOCUMENT;
+    }
+
+    /**
+     * Skips the contents of the map or list that was just started, moving to its {@link StreamEvent#END_MAP}
+     * or {@link StreamEvent#END_LIST} event. The skipped text is matched by brackets only, without parsing it,
+     * so errors in the structure of the skipped elements are not detected.
+     *
+     * @throws IOException           When accessing the source stream.
+     * @throws ParserException       When the document ends before the container is closed
+     * @throws IllegalStateException If the current event is not the start of a container.
+     */
+    public void skipChildren() throws IOException, ParserException
+    {
+        if (event != StreamEvent.START_MAP && event != StreamEvent.START_LIST)
+            throw new IllegalStateException("The current event is not the start of a map or list.");
+
+        lexer.skipNested();
+
+        typeName = null;
+        endContainer();
+    }
+
+    /**
+     * @return The current event, or null if {@link #next()} has not been called yet.
+     */
+    @Nullable
+    public StreamEvent getEvent()
+    {
+        return event;
+    }
+
+    /**
+     * @return The number of maps and lists the reader is currently inside of.
+     */
+    public int depth()
+    {
+        return containers.size();
+    }
+
+    /**
+     * @return The key of the current element in its parent map, or null if the parent is a list, or there is no parent.
+     * For the end of a map or list, this is the key of the map or list being closed.
+     */
+    @Nullable
+    public String currentKey()
+    {
+        return currentKey;
+    }
+
+    /**
+     * @return The type name of the map that was just started, or null if it has none.
+     */
+    @Nullable
+    public String typeName()
+    {
+        requireEvent(StreamEvent.START_MAP);
+        return typeName;
+    }
+
+    /**
+     * @return The value of the current boolean element.
+     */
+    public boolean booleanValue()
+    {
+        requireEvent(StreamEvent.BOOLEAN);
+        return longValue != 0;
+    }
+
+    /**
+     * @return The value of the current integer element.
+     */
+    public long longValue()
+    {
+        requireEvent(StreamEvent.INTEGER);
+        return longValue;
+    }
+
+    /**
+     * @return The value of the current decimal element. Integer elements are also converted.
+     */
+    public double doubleValue()
+    {
+        if (event == StreamEvent.INTEGER)
+            return longValue;
+        requireEvent(StreamEvent.DECIMAL);
+        return doubleValue;
+    }
+
+    /**
+     * @return The value of the current string element, with the quotes and escape sequences already processed.
+     */
+    public String stringValue()
+    {
+        requireEvent(StreamEvent.STRING);
+        return stringValue;
+    }
+
+    /**
+     * @return The query of the current reference element. References are not resolved.
+     */
+    public Query referenceValue()
+    {
+        requireEvent(StreamEvent.REFERENCE);
+        return reference;
+    }
+    //endregion
+
+    //region Implementation
+    private static final int MAP = 0;
+    private static final int LIST = 1;
+
+    private final TokenProvider lexer;
+    private Parser queryParser;
+
+    private final BasicIntStack containers = new BasicIntStack();
+    private final List<String> containerKeys = new ArrayList<>();
+    private boolean afterElement;
+    private boolean finishedWithRBrace;
+
+    private StreamEvent event;
+    private String currentKey;
+    private String typeName;
+    private long longValue;
+    private double doubleValue;
+    private String stringValue;
+    private Query reference;
+
+    private void requireEvent(StreamEvent expected)
+    {
+        if (event != expected)
+            throw new IllegalStateException(String.format("The current event is %s, not %s.", event, expected));
+    }
+
+    private Token popExpected(TokenType... expected) throws ParserException, IOException
+    {
+        Token current = lexer.peekFull();
+        for (TokenType type : expected)
+        {
+            if (current.is(type))
+                return lexer.pop();
+        }
+
+        if (expected.length != 1)
+            throw new ParserException(this, String.format("Unexpected token %s. Expected one of: %s.", current, Utility.join(", ", expected)));
+
+        throw new ParserException(this, String.format("Unexpected token %s. Expected: %s.", current, expected[0]));
+    }
+
+    private StreamEvent element() throws ParserException, IOException
+    {
+        afterElement = true;
+        stringValue = null;
+        reference = null;
+
+        switch (lexer.peek())
+        {
+            case NIL, NULL ->
+            {
+                lexer.pop();
+                return event = StreamEvent.NULL;
+            }
+            case TRUE, FALSE ->
+            {
+                longValue = lexer.pop().type == TokenType.TRUE ? 1 : 0;
+                return event = StreamEvent.BOOLEAN;
+            }
+            case INTEGER_LITERAL, HEX_INT_LITERAL ->
+            {
+                longValue = longValue(lexer.pop());
+                return event = StreamEvent.INTEGER;
+            }
+            case DECIMAL_LITERAL ->
+            {
+                doubleValue = doubleValue(lexer.pop());
+                return event = StreamEvent.DECIMAL;
+            }
+            case STRING_LITERAL ->
+            {
+                stringValue = stringValue(lexer.pop());
+                return event = StreamEvent.STRING;
+            }
+            case IDENTIFIER ->
+            {
+                if (lexer.peek(1) == TokenType.L_BRACE)
+                {
+                    typeName = lexer.pop().getText();
+                    return startContainer(TokenType.L_BRACE);
+                }
+                return reference();
+            }
+            case L_BRACE, L_BRACKET ->
+            {
+                return startContainer(lexer.peek());
+            }
+            case COLON, SLASH ->
+            {
+                return reference();
+            }
+            default -> throw new ParserException(this, String.format("Unexpected token %s.", lexer.peekFull()));
+        }
+    }
+
+    private StreamEvent reference() throws ParserException, IOException
+    {
+        if (queryParser == null)
+            queryParser = new Parser(lexer);
+        reference = queryParser.referencePath();
+        return event = StreamEvent.REFERENCE;
+    }
+
+    private StreamEvent startContainer(TokenType opening) throws ParserException, IOException
+    {
+        popExpected(opening);
+        afterElement = false;
+        containerKeys.add(currentKey);
+        if (opening == TokenType.L_BRACE)
+        {
+            containers.push(MAP);
+            return event = StreamEvent.START_MAP;
+        }
+        containers.push(LIST);
+        return event = StreamEvent.START_LIST;
+    }
+
+    private StreamEvent endContainer()
+    {
+        afterElement = true;
+        finishedWithRBrace = true;
+        currentKey = containerKeys.remove(containerKeys.size() - 1);
+        return event = containers.pop() == MAP ? StreamEvent.END_MAP : StreamEvent.END_LIST;
+    }
+
+    private long longValue(Token token) throws ParserException
+    {
+        try
+        {
+            return token.longValue();
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new ParserException(token, "Parsing integer", ex);
+        }
+    }
+
+    private double doubleValue(Token token) throws ParserException
+    {
+        try
+        {
+            return token.doubleValue();
+        }
+        catch (NumberFormatException ex)
+        {
+            throw new ParserException(token, "Parsing decimal", ex);
+        }
+    }
+
+    private String stringValue(Token token) throws ParserException
+    {
+        try
+        {
+            return token.stringValue();
+        }
+        catch (IllegalArgumentException ex)
+        {
+            throw new ParserException(token, "Unescaping string", ex);
+        }
+    }
+    //endregion
+
+    //region toString
+    @Override
+    public String toString()
+    {
+        return String.format("{GddlStreamReader event=%s, depth=%d, lexer=%s}", event, containers.size(), lexer);
+    }
+    //endregion
+
+    //region ContextProvider
+    @Override
+    public ParsingContext getParsingContext()
+    {
+        return lexer.getParsingContext();
+    }
+    //endregion
+
+    //region AutoCloseable
+    @Override
+    public void close() throws Exception
+    {
+        lexer.close();
+    }
+    //endregion
+}
@@ -3,16 +3,25 @@ package dev.gigaherz.util.gddl2.parsing;
 import dev.gigaherz.util.gddl2.exceptions.LexerException;
 import dev.gigaherz.util.gddl2.exceptions.ReaderException;
 import dev.gigaherz.util.gddl2.internal.ArrayQueue;
+import dev.gigaherz.util.gddl2.internal.BasicIntStack;
 import dev.gigaherz.util.gddl2.internal.Utility;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.Objects;
 
 public class Lexer implements TokenProvider, AutoCloseable
 {
     //region API
     public Lexer(Reader r)
+    {
+        this(r, WhitespaceMode.PRESERVE_ALL_WHITESPACE);
+    }
+
+    public Lexer(Reader r, WhitespaceMode whitespaceMode)
     {
         reader = r;
+        this.whitespaceMode = whitespaceMode;
     }
 
     @Override
@@ -24,7 +33,7 @@ public class Lexer implements TokenProvider, AutoCloseable
     @Override
     public void setWhitespaceMode(WhitespaceMode whitespaceMode)
     {
-        this.whitespaceMode = whitespaceMode;
+        this.whitespaceMode = Objects.requireNonNull(whitespaceMode);
     }
 
     @Override
@@ -58,9 +67,105 @@ public class Lexer implements TokenProvider, AutoCloseable
 
         return lookAhead.remove();
     }
+
+    /**
+     * Skips the rest of a nested element without producing tokens for it.
+     * Once the lookahead is used up, the source is scanned character by character,
+     * only keeping track of the nesting depth, string literals and comments.
+     */
+    @Override
+    public void skipNested() throws LexerException, IOException
+    {
+        int depth = 1;
+        while (depth > 0 && lookAhead.size() > 0)
+        {
+            switch (lookAhead.remove().type)
+            {
+                case L_BRACE, L_BRACKET -> depth++;
+                case R_BRACE, R_BRACKET -> depth--;
+                case END -> throw new LexerException(this, "Unexpected end of input inside a nested element.");
+            }
+        }
+
+        scanNested(depth, null);
+    }
     //endregion
 
     //region Implementation
+    Reader getReader()
+    {
+        return reader;
+    }
+
+    /**
+     * Forgets the tokens read so far, to start over after the reader has been reset.
+     */
+    void reset()
+    {
+        lookAhead.clear();
+        seenEnd = false;
+    }
+
+    /**
+     * Scans the rest of a map or list whose opening brace or bracket has just been read, without producing tokens.
+     * Must be called before any token has been read.
+     *
+     * @return The offsets of the commas that separate the direct children of the map or list, followed by the offset of its closing brace or bracket.
+     */
+    int[] scanSeparators() throws LexerException, IOException
+    {
+        if (lookAhead.size() > 0)
+            throw new IllegalStateException("Separators can only be scanned before any token is read.");
+
+        var separators = new BasicIntStack();
+        scanNested(1, separators);
+        separators.push(reader.getOffset() - 1);
+        return separators.toArray();
+    }
+
+    /**
+     * Moves past the raw text of nested elements until the given depth is closed.
+     * Strings and comments are skipped as a whole, so that any brackets inside them are not counted.
+     */
+    private void scanNested(int depth, @Nullable BasicIntStack separators) throws LexerException, IOException
+    {
+        while (depth > 0)
+        {
+            int ich = reader.peek();
+            switch (ich)
+            {
+                case -1 -> throw new LexerException(this, "Unexpected end of input inside a nested element.");
+                case '{', '[' ->
+                {
+                    depth++;
+                    reader.skip(1);
+                }
+                case '}', ']' ->
+                {
+                    depth--;
+                    reader.skip(1);
+                }
+                case ',' ->
+                {
+                    if (depth == 1 && separators != null)
+                        separators.push(reader.getOffset());
+                    reader.skip(1);
+                }
+                case '#' ->
+                {
+                    do
+                    {
+                        reader.skip(1);
+                        ich = reader.peek();
+                    }
+                    while (ich >= 0 && ich != '\r' && ich != '\n');
+                }
+                case '"', '\'' -> skipStringLiteral(ich);
+                default -> reader.skip(1);
+            }
+        }
+    }
+
     private final ArrayQueue<Token> lookAhead = new ArrayQueue<>();
     private final StringBuilder whitespaceBuilder = new StringBuilder();
     private final StringBuilder commentBuilder = new StringBuilder();
@@ -90,11 +195,11 @@ public class Lexer implements TokenProvider, AutoCloseable
 
     private Token parseOne() throws LexerException, IOException
     {
-        ParsingContext startContext = reader.getParsingContext();
+        int startOffset = reader.getOffset();
 
         if (seenEnd)
         {
-            return makeEndToken(startContext, "", "");
+            return makeEndToken(startOffset, "", "");
         }
 
         whitespaceAndComments();
@@ -104,30 +209,30 @@ public class Lexer implements TokenProvider, AutoCloseable
         int ich = reader.peek();
 
         if (ich < 0)
-            return makeEndToken(startContext, comment, whitespace);
+            return makeEndToken(startOffset, comment, whitespace);
 
         switch (ich)
         {
             case '{':
-                return new Token(TokenType.L_BRACE, reader.read(1), startContext, comment, whitespace);
+                return makeSymbol(TokenType.L_BRACE, "{", startOffset, comment, whitespace);
             case '}':
-                return new Token(TokenType.R_BRACE, reader.read(1), startContext, comment, whitespace);
+                return makeSymbol(TokenType.R_BRACE, "}", startOffset, comment, whitespace);
             case '[':
-                return new Token(TokenType.L_BRACKET, reader.read(1), startContext, comment, whitespace);
+                return makeSymbol(TokenType.L_BRACKET, "[", startOffset, comment, whitespace);
             case ']':
-                return new Token(TokenType.R_BRACKET, reader.read(1), startContext, comment, whitespace);
+                return makeSymbol(TokenType.R_BRACKET, "]", startOffset, comment, whitespace);
             case ',':
-                return new Token(TokenType.COMMA, reader.read(1), startContext, comment, whitespace);
+                return makeSymbol(TokenType.COMMA, ",", startOffset, comment, whitespace);
             case ':':
-                return new Token(TokenType.COLON, reader.read(1), startContext, comment, whitespace);
+                return makeSymbol(TokenType.COLON, ":", startOffset, comment, whitespace);
             case '/':
-                return new Token(TokenType.SLASH, reader.read(1), startContext, comment, whitespace);
+                return makeSymbol(TokenType.SLASH, "/", startOffset, comment, whitespace);
             case '=':
-                return new Token(TokenType.EQUAL_SIGN, reader.read(1), startContext, comment, whitespace);
+                return makeSymbol(TokenType.EQUAL_SIGN, "=", startOffset, comment, whitespace);
             case '%':
-                return new Token(TokenType.PERCENT, reader.read(1), startContext, comment, whitespace);
+                return makeSymbol(TokenType.PERCENT, "%", startOffset, comment, whitespace);
             case '^':
-                return new Token(TokenType.CARET, reader.read(1), startContext, comment, whitespace);
+                return makeSymbol(TokenType.CARET, "^", startOffset, comment, whitespace);
         }
 
         if (Utility.isLetter(ich) || ich == '_')
@@ -149,31 +254,25 @@ public class Lexer implements TokenProvider, AutoCloseable
                 }
             }
 
-            Token id = new Token(TokenType.IDENTIFIER, reader.read(number), startContext, comment, whitespace);
-
-            if (id.text.compareToIgnoreCase("nil") == 0) return id.specialize(TokenType.NIL);
-            if (id.text.compareToIgnoreCase("null") == 0) return id.specialize(TokenType.NULL);
-            if (id.text.compareToIgnoreCase("true") == 0) return id.specialize(TokenType.TRUE);
-            if (id.text.compareToIgnoreCase("false") == 0) return id.specialize(TokenType.FALSE);
-            if (id.text.compareToIgnoreCase("boolean") == 0) return id.specialize(TokenType.BOOLEAN);
-            if (id.text.compareToIgnoreCase("string") == 0) return id.specialize(TokenType.STRING);
-            if (id.text.compareToIgnoreCase("integer") == 0) return id.specialize(TokenType.INTEGER);
-            if (id.text.compareToIgnoreCase("decimal") == 0) return id.specialize(TokenType.DECIMAL);
-
-            return id;
+            return identifierOrKeyword(number, startOffset, comment, whitespace);
         }
 
         if (ich == '"' || ich == '\'')
         {
             int startedWith = ich;
             int number = 1;
+            boolean escaped = false;
 
             ich = reader.peek(number);
             while (ich != startedWith && ich >= 0)
             {
                 switch (ich)
                 {
-                    case '\\' -> number = countEscapeSeq(number);
+                    case '\\' ->
+                    {
+                        escaped = true;
+                        number = countEscapeSeq(number);
+                    }
                     case '\r' ->
                     {
                         number++;
@@ -195,7 +294,8 @@ public class Lexer implements TokenProvider, AutoCloseable
 
             number++;
 
-            return new Token(TokenType.STRING_LITERAL, reader.read(number), startContext, comment, whitespace);
+            Token token = makeToken(TokenType.STRING_LITERAL, number, startOffset, comment, whitespace);
+            return escaped ? token : token.withoutEscapes();
         }
 
         if (Utility.isDigit(ich) || ich == '.' || ich == '+' || ich == '-')
@@ -203,6 +303,7 @@ public class Lexer implements TokenProvider, AutoCloseable
             // numbers
             int number = 0;
             boolean fractional = false;
+            boolean negative = false;
 
             if (ich == '.')
             {
@@ -212,14 +313,14 @@ public class Lexer implements TokenProvider, AutoCloseable
                     ich = reader.peek(2);
                     if (ich == '.')
                     {
-                        return new Token(TokenType.TRIPLE_DOT, reader.read(3), startContext, comment, whitespace);
+                        return makeSymbol(TokenType.TRIPLE_DOT, "...", startOffset, comment, whitespace);
                     }
 
-                    return new Token(TokenType.DOUBLE_DOT, reader.read(2), startContext, comment, whitespace);
+                    return makeSymbol(TokenType.DOUBLE_DOT, "..", startOffset, comment, whitespace);
                 }
                 else if (!Utility.isDigit(ich) && (ich != 'I') && (ich != 'N'))
                 {
-                    return new Token(TokenType.DOT, reader.read(2), startContext, comment, whitespace);
+                    return makeSymbol(TokenType.DOT, ".", startOffset, comment, whitespace);
                 }
 
                 ich = reader.peek();
@@ -227,11 +328,12 @@ public class Lexer implements TokenProvider, AutoCloseable
 
             if (ich == '.' && reader.peek(number + 1) == 'N' && reader.peek(number + 2) == 'a' && reader.peek(number + 3) == 'N')
             {
-                return new Token(TokenType.DECIMAL_LITERAL, reader.read(number + 4), startContext, comment, whitespace);
+                return makeDecimal(number + 4, Double.NaN, startOffset, comment, whitespace);
             }
 
             if (ich == '-' || ich == '+')
             {
+                negative = ich == '-';
                 number++;
 
                 ich = reader.peek(number);
@@ -239,9 +341,15 @@ public class Lexer implements TokenProvider, AutoCloseable
 
             if (ich == '.' && reader.peek(number + 1) == 'I' && reader.peek(number + 2) == 'n' && reader.peek(number + 3) == 'f')
             {
-                return new Token(TokenType.DECIMAL_LITERAL, reader.read(number + 4), startContext, comment, whitespace);
+                return makeDecimal(number + 4, negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY, startOffset, comment, whitespace);
             }
 
+            // The digits are accumulated into the mantissa while scanning, for as long as it fits.
+            long mantissa = 0;
+            int digits = 0;
+            boolean exact = true;
+            int exponent = 0;
+
             if (Utility.isDigit(ich))
             {
                 if (reader.peek(number) == '0' && reader.peek(number + 1) == 'x')
@@ -251,18 +359,31 @@ public class Lexer implements TokenProvider, AutoCloseable
                     ich = reader.peek(number);
                     while (Utility.isDigit(ich) || (ich >= 'a' && ich <= 'f') || (ich >= 'A' && ich <= 'F'))
                     {
+                        if (mantissa > (Long.MAX_VALUE >>> 4))
+                            exact = false;
+                        mantissa = (mantissa << 4) | Character.digit(ich, 16);
+                        digits++;
                         number++;
 
                         ich = reader.peek(number);
                     }
 
-                    return new Token(TokenType.HEX_INT_LITERAL, reader.read(number), startContext, comment, whitespace);
+                    if (digits == 0 || !exact)
+                        return makeToken(TokenType.HEX_INT_LITERAL, number, startOffset, comment, whitespace);
+
+                    return makeInteger(TokenType.HEX_INT_LITERAL, number, negative ? -mantissa : mantissa, startOffset, comment, whitespace);
                 }
 
-                number = 1;
-                ich = reader.peek(number);
                 while (Utility.isDigit(ich))
                 {
+                    if (mantissa < MAX_MANTISSA)
+                        mantissa = mantissa * 10 + Character.digit(ich, 10);
+                    else
+                    {
+                        exact = false;
+                        exponent++;
+                    }
+                    digits++;
                     number++;
 
                     ich = reader.peek(number);
@@ -288,6 +409,14 @@ public class Lexer implements TokenProvider, AutoCloseable
                     //noinspection WhileCanBeDoWhile
                     while (Utility.isDigit(ich))
                     {
+                        if (mantissa < MAX_MANTISSA)
+                        {
+                            mantissa = mantissa * 10 + Character.digit(ich, 10);
+                            exponent--;
+                        }
+                        else
+                            exact = false;
+                        digits++;
                         number++;
 
                         ich = reader.peek(number);
@@ -303,8 +432,10 @@ public class Lexer implements TokenProvider, AutoCloseable
                 number++;
 
                 ich = reader.peek(number);
+                boolean negativeExponent = false;
                 if (ich == '+' || ich == '-')
                 {
+                    negativeExponent = ich == '-';
                     number++;
 
                     ich = reader.peek(number);
@@ -313,29 +444,154 @@ public class Lexer implements TokenProvider, AutoCloseable
                 if (!Utility.isDigit(ich))
                     throw new LexerException(this, String.format("Expected DIGIT, found %c", ich));
 
+                int explicitExponent = 0;
                 while (Utility.isDigit(ich))
                 {
+                    if (explicitExponent < 100000)
+                        explicitExponent = explicitExponent * 10 + Character.digit(ich, 10);
                     number++;
 
                     ich = reader.peek(number);
                 }
+                exponent += negativeExponent ? -explicitExponent : explicitExponent;
             }
 
             if (fractional)
-                return new Token(TokenType.DECIMAL_LITERAL, reader.read(number), startContext, comment, whitespace);
+            {
+                if (digits > 0 && exact)
+                {
+                    double value = fastDecimal(mantissa, exponent);
+                    if (!Double.isNaN(value))
+                        return makeDecimal(number, negative ? -value : value, startOffset, comment, whitespace);
+                }
+                return makeToken(TokenType.DECIMAL_LITERAL, number, startOffset, comment, whitespace);
+            }
+
+            if (digits == 0 || !exact)
+                return makeToken(TokenType.INTEGER_LITERAL, number, startOffset, comment, whitespace);
 
-            return new Token(TokenType.INTEGER_LITERAL, reader.read(number), startContext, comment, whitespace);
+            return makeInteger(TokenType.INTEGER_LITERAL, number, negative ? -mantissa : mantissa, startOffset, comment, whitespace);
         }
 
         throw new LexerException(this, String.format("Unexpected character: %c", reader.peek()));
     }
 
-    private void whitespaceAndComments() throws ReaderException, IOException
+    private static final int NO_MATCH = 0;
+    private static final int MATCH_IGNORING_CASE = 1;
+    private static final int EXACT_MATCH = 2;
+
+    /**
+     * Decides whether the identifier at the start of the lookahead is a keyword, using the length
+     * and the first character to pick the only candidate, and then comparing it in a single pass.
+     */
+    private Token identifierOrKeyword(int length, int startOffset, String comment, String whitespace) throws ReaderException, IOException
     {
-        int ich = reader.peek();
+        TokenType type = null;
+        String keyword = null;
+        switch (length)
+        {
+            case 3 ->
+            {
+                type = TokenType.NIL;
+                keyword = "nil";
+            }
+            case 4 ->
+            {
+                switch (reader.peek() | 0x20)
+                {
+                    case 'n' ->
+                    {
+                        type = TokenType.NULL;
+                        keyword = "null";
+                    }
+                    case 't' ->
+                    {
+                        type = TokenType.TRUE;
+                        keyword = "true";
+                    }
+                }
+            }
+            case 5 ->
+            {
+                type = TokenType.FALSE;
+                keyword = "false";
+            }
+            case 6 ->
+            {
+                type = TokenType.STRING;
+                keyword = "string";
+            }
+            case 7 ->
+            {
+                switch (reader.peek() | 0x20)
+                {
+                    case 'b' ->
+                    {
+                        type = TokenType.BOOLEAN;
+                        keyword = "boolean";
+                    }
+                    case 'i' ->
+                    {
+                        type = TokenType.INTEGER;
+                        keyword = "integer";
+                    }
+                    case 'd' ->
+                    {
+                        type = TokenType.DECIMAL;
+                        keyword = "decimal";
+                    }
+                }
+            }
+        }
+
+        if (keyword != null)
+        {
+            switch (matchKeyword(keyword))
+            {
+                case EXACT_MATCH:
+                    return makeSymbol(type, keyword, startOffset, comment, whitespace);
+                case MATCH_IGNORING_CASE:
+                    return makeToken(type, length, startOffset, comment, whitespace);
+            }
+        }
+
+        return makeToken(TokenType.IDENTIFIER, length, startOffset, comment, whitespace);
+    }
 
+    /**
+     * Compares the start of the lookahead with a lowercase keyword, ignoring ASCII case.
+     */
+    private int matchKeyword(String keyword) throws ReaderException, IOException
+    {
+        boolean exact = true;
+        for (int i = 0; i < keyword.length(); i++)
+        {
+            int ich = reader.peek(i);
+            char kch = keyword.charAt(i);
+            if (ich != kch)
+            {
+                if ((ich | 0x20) != kch)
+                    return NO_MATCH;
+                exact = false;
+            }
+        }
+        return exact ? EXACT_MATCH : MATCH_IGNORING_CASE;
+    }
+
+    private void whitespaceAndComments() throws ReaderException, IOException
+    {
         whitespaceBuilder.setLength(0);
         commentBuilder.setLength(0);
+
+        if (whitespaceMode == WhitespaceMode.DROP_ALL)
+        {
+            skipWhitespaceAndComments();
+            return;
+        }
+
+        final boolean keepWhitespace = whitespaceMode == WhitespaceMode.PRESERVE_ALL_WHITESPACE;
+
+        int ich = reader.peek();
         boolean commentStarted = false;
         commentLoop:
         while (true)
@@ -348,7 +604,8 @@ public class Lexer implements TokenProvider, AutoCloseable
                 case '\t':
                 {
                     char cch = (char) ich;
-                    whitespaceBuilder.append(cch);
+                    if (keepWhitespace)
+                        whitespaceBuilder.append(cch);
                     if (commentStarted)
                         commentBuilder.append(cch);
                     reader.skip(1);
@@ -359,7 +616,8 @@ public class Lexer implements TokenProvider, AutoCloseable
                 case '\n':
                 {
                     char cch = (char) ich;
-                    whitespaceBuilder.append(cch);
+                    if (keepWhitespace)
+                        whitespaceBuilder.append(cch);
                     if (commentStarted)
                         commentBuilder.append(cch);
                     reader.skip(1);
@@ -367,7 +625,8 @@ public class Lexer implements TokenProvider, AutoCloseable
                     if (cch == '\r' && ich == '\n')
                     {
                         cch = (char) ich;
-                        whitespaceBuilder.append(cch);
+                        if (keepWhitespace)
+                            whitespaceBuilder.append(cch);
                         if (commentStarted)
                             commentBuilder.append(cch);
                         reader.skip(1);
@@ -379,7 +638,8 @@ public class Lexer implements TokenProvider, AutoCloseable
                 case '#':
                 {
                     char cch = (char) ich;
-                    whitespaceBuilder.append(cch);
+                    if (keepWhitespace)
+                        whitespaceBuilder.append(cch);
                     if (!commentStarted)
                     {
                         commentStarted = true;
@@ -401,7 +661,8 @@ public class Lexer implements TokenProvider, AutoCloseable
                     else
                     {
                         char cch = (char) ich;
-                        whitespaceBuilder.append(cch);
+                        if (keepWhitespace)
+                            whitespaceBuilder.append(cch);
                         commentBuilder.append(cch);
                         reader.skip(1);
                         ich = reader.peek();
@@ -412,6 +673,27 @@ public class Lexer implements TokenProvider, AutoCloseable
         }
     }
 
+    /**
+     * Fast path for {@link WhitespaceMode#DROP_ALL}: moves past whitespace and comments without buffering them.
+     */
+    private void skipWhitespaceAndComments() throws ReaderException, IOException
+    {
+        int ich = reader.peek();
+        boolean commentStarted = false;
+        while (ich >= 0)
+        {
+            if (ich == '\r' || ich == '\n')
+                commentStarted = false;
+            else if (ich == '#')
+                commentStarted = true;
+            else if (!commentStarted && ich != ' ' && ich != '\t')
+                break;
+
+            reader.skip(1);
+            ich = reader.peek();
+        }
+    }
+
     private String getComment()
     {
         return !commentBuilder.isEmpty() ? commentBuilder.toString() : "";
@@ -422,10 +704,117 @@ public class Lexer implements TokenProvider, AutoCloseable
         return !whitespaceBuilder.isEmpty() ? whitespaceBuilder.toString() : "";
     }
 
-    private Token makeEndToken(ParsingContext startContext, String comment, String whitespace)
+    private Token makeSymbol(TokenType type, String text, int startOffset, String comment, String whitespace) throws ReaderException, IOException
+    {
+        int start = reader.getOffset();
+        reader.skip(text.length());
+        return new Token(type, text, reader, startOffset, start, start + text.length(), comment, whitespace);
+    }
+
+    private Token makeToken(TokenType type, int length, int startOffset, String comment, String whitespace) throws ReaderException, IOException
+    {
+        int start = reader.getOffset();
+        String text = null;
+        if (reader.isInMemory())
+            reader.skip(length);
+        else
+            text = reader.read(length);
+        return new Token(type, text, reader, startOffset, start, start + length, comment, whitespace);
+    }
+
+    /**
+     * Makes a numeric token that carries its value, so it does not need to be parsed again.
+     * If the source text is not being kept, and the reader can't slice it later, the text is not read at all.
+     */
+    private Token makeInteger(TokenType type, int length, long value, int startOffset, String comment, String whitespace) throws ReaderException, IOException
+    {
+        return makeNumber(type, length, startOffset, comment, whitespace).withValue(value);
+    }
+
+    private Token makeDecimal(int length, double value, int startOffset, String comment, String whitespace) throws ReaderException, IOException
+    {
+        return makeNumber(TokenType.DECIMAL_LITERAL, length, startOffset, comment, whitespace).withValue(value);
+    }
+
+    private Token makeNumber(TokenType type, int length, int startOffset, String comment, String whitespace) throws ReaderException, IOException
+    {
+        if (whitespaceMode != WhitespaceMode.DROP_ALL || reader.isInMemory())
+            return makeToken(type, length, startOffset, comment, whitespace);
+
+        int start = reader.getOffset();
+        reader.skip(length);
+        return new Token(type, null, reader, startOffset, start, start + length, comment, whitespace);
+    }
+
+    /**
+     * Largest mantissa that can take one more decimal digit without overflowing.
+     */
+    private static final long MAX_MANTISSA = (Long.MAX_VALUE - 9) / 10;
+
+    /**
+     * Powers of ten that are exactly representable as a double.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Converts mantissa * 10^exponent to a double, when it can be done with a single correctly rounded
+     * floating point operation: the mantissa and the power of ten must both be exactly representable.
+     *
+     * @return The value, or NaN if the conversion needs the slow path.
+     */
+    private static double fastDecimal(long mantissa, int exponent)
+    {
+        if (mantissa == 0)
+            return 0.0;
+
+        if (mantissa > (1L << 53))
+            return Double.NaN;
+
+        if (exponent < 0)
+        {
+            if (exponent < -22)
+                return Double.NaN;
+            return mantissa / POWERS_OF_TEN[-exponent];
+        }
+
+        if (exponent > 22)
+        {
+            // Move the excess of the exponent into the mantissa, if it still stays exact.
+            int excess = exponent - 22;
+            if (excess > 15)
+                return Double.NaN;
+            long power = (long) POWERS_OF_TEN[excess];
+            if (mantissa > (1L << 53) / power)
+                return Double.NaN;
+            mantissa *= power;
+            exponent = 22;
+        }
+
+        return mantissa * POWERS_OF_TEN[exponent];
+    }
+
+    private Token makeEndToken(int startOffset, String comment, String whitespace)
     {
         seenEnd = true;
-        return new Token(TokenType.END, "", startContext, comment, whitespace);
+        int start = reader.getOffset();
+        return new Token(TokenType.END, "", reader, startOffset, start, start, comment, whitespace);
+    }
+
+    private void skipStringLiteral(int startedWith) throws LexerException, IOException
+    {
+        int number = 1;
+        int ich = reader.peek(number);
+        while (ich != startedWith)
+        {
+            if (ich < 0)
+                throw new LexerException(this, String.format("Expected '%c', found %s", startedWith, debugChar(ich)));
+            number += ich == '\\' ? 2 : 1;
+            ich = reader.peek(number);
+        }
+        reader.skip(number + 1);
     }
 
     private String debugChar(int ich)
@@ -532,7 +921,7 @@ public class Lexer implements TokenProvider, AutoCloseable
     public ParsingContext getParsingContext()
     {
         if (lookAhead.size() > 0)
-            return lookAhead.get(0).context;
+            return lookAhead.get(0).getParsingContext();
         return reader.getParsingContext();
     }
     //endregion
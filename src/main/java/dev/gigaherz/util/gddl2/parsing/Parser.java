@@ -1,17 +1,25 @@
 package dev.gigaherz.util.gddl2.parsing;
 
-import dev.gigaherz.util.gddl2.exceptions.LexerException;
 import dev.gigaherz.util.gddl2.exceptions.ParserException;
-import dev.gigaherz.util.gddl2.internal.BasicIntStack;
+import dev.gigaherz.util.gddl2.internal.QuerySelection;
 import dev.gigaherz.util.gddl2.internal.Utility;
 import dev.gigaherz.util.gddl2.queries.Index;
 import dev.gigaherz.util.gddl2.queries.Query;
 import dev.gigaherz.util.gddl2.queries.Range;
 import dev.gigaherz.util.gddl2.structure.*;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicReference;
 
 @SuppressWarnings("unused")
@@ -70,63 +78,171 @@ public class Parser implements ContextProvider, AutoCloseable
         return doc;
     }
 
+    /**
+     * Parses only the parts of the file that the given queries can reach, and returns the resulting root element.
+     * Other subtrees are skipped without being built, so the document contains only the selected elements and
+     * the maps and lists that lead to them. Skipped list items are replaced with null values, so that the indices
+     * of the remaining items are preserved.
+     *
+     * @param queries The queries that will be evaluated on the document
+     * @return The root element
+     * @throws IOException     When accessing the source stream.
+     * @throws ParserException When parsing
+     */
+    public GddlDocument parseSelected(Query... queries) throws IOException, ParserException
+    {
+        GddlElement<?> root = selected(QuerySelection.of(queries));
+        var end = popExpected(TokenType.END);
+
+        var doc = GddlDocument.create(root);
+        doc.setDanglingComment(end.comment);
+
+        return doc;
+    }
+
+    /**
+     * Parses the root element, but leaves its nested maps and lists to be parsed when they are first accessed.
+     * Until then, only their location in the source is remembered. Deferred parsing needs the whole source
+     * to be held in memory; for other sources, this is the same as {@link #parse()}.
+     * <p>
+     * Syntax errors inside a nested map or list are only detected when it is accessed, and are thrown then,
+     * wrapped in an {@link IllegalStateException}.
+     *
+     * @return The root element
+     * @throws IOException     When accessing the source stream.
+     * @throws ParserException When parsing
+     */
+    public GddlDocument parseDeferred() throws IOException, ParserException
+    {
+        deferNested = lexer instanceof Lexer l && l.getReader().isInMemory();
+        return parse(false);
+    }
+
+    /**
+     * Parses the whole file, splitting the children of a large root map or list into chunks that are parsed
+     * in parallel on the common fork-join pool. Equivalent to {@link #parseParallel(ForkJoinPool)} with
+     * {@link ForkJoinPool#commonPool()}.
+     *
+     * @return The root element
+     * @throws IOException     When accessing the source stream.
+     * @throws ParserException When parsing
+     */
+    public GddlDocument parseParallel() throws IOException, ParserException
+    {
+        return parseParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the whole file, splitting the children of a large root map or list into chunks that are parsed
+     * in parallel on the given pool. The boundaries between chunks are found by a quick scan that only tracks
+     * brackets, string literals and comments. The result is the same as {@link #parse()}.
+     * Parallel parsing needs the whole source to be held in memory; for other sources, and for documents with a
+     * small root element, this is the same as {@link #parse()}.
+     *
+     * @param pool The pool to run the chunks on
+     * @return The root element
+     * @throws IOException     When accessing the source stream.
+     * @throws ParserException When parsing
+     */
+    public GddlDocument parseParallel(ForkJoinPool pool) throws IOException, ParserException
+    {
+        if (!(lexer instanceof Lexer l && l.getReader().isInMemory()))
+            return parse(false);
+
+        Token type = null;
+        if (lexer.peek() == TokenType.IDENTIFIER && lexer.peek(1) == TokenType.L_BRACE)
+            type = name();
+        else if (lexer.peek() != TokenType.L_BRACE && lexer.peek() != TokenType.L_BRACKET)
+            return parse(false);
+
+        GddlElement<?> root = parallelRoot(lexer.pop(), pool);
+        if (type != null)
+        {
+            root = root.asMap().withTypeName(type.getText());
+            root.setComment(type.comment);
+        }
+
+        var doc = GddlDocument.create(root);
+        doc.setDanglingComment(danglingComment);
+
+        return doc;
+    }
+
     public Query parseQuery() throws IOException, ParserException
     {
         var result = queryPath();
         popExpected(TokenType.END);
         return result.path();
     }
+
+    /**
+     * Parses the path of a reference that appears as an element, leaving the tokens that follow it in the lexer.
+     */
+    Query referencePath() throws IOException, ParserException
+    {
+        return queryPath().path();
+    }
     //endregion
 
     //region Implementation
-    private int prefixPos = -1;
-    private final BasicIntStack prefixStack = new BasicIntStack();
+    private static final int MIN_PARALLEL_SEPARATORS = 64;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final Set<TokenType> NAME_TOKENS = EnumSet.of(TokenType.IDENTIFIER, TokenType.STRING_LITERAL);
+    private static final Set<TokenType> ASSIGNMENT_TOKENS = EnumSet.of(TokenType.EQUAL_SIGN, TokenType.COLON);
+    private static final Set<TokenType> DELIMITER_TOKENS = EnumSet.of(TokenType.COLON, TokenType.SLASH);
+    private static final Set<TokenType> PATH_START_TOKENS = EnumSet.of(TokenType.IDENTIFIER, TokenType.STRING_LITERAL, TokenType.L_BRACKET);
+    private static final Set<TokenType> PATH_COMPONENT_TOKENS = EnumSet.of(TokenType.IDENTIFIER, TokenType.STRING_LITERAL, TokenType.DOT, TokenType.DOUBLE_DOT, TokenType.L_BRACKET);
+    private static final Set<TokenType> RANGE_TOKENS = EnumSet.of(TokenType.DOUBLE_DOT, TokenType.TRIPLE_DOT);
+    private static final Set<TokenType> SCALAR_TOKENS = EnumSet.of(TokenType.NIL, TokenType.NULL, TokenType.TRUE, TokenType.FALSE,
+            TokenType.INTEGER_LITERAL, TokenType.HEX_INT_LITERAL, TokenType.DECIMAL_LITERAL, TokenType.STRING_LITERAL);
+
     private boolean finishedWithRBrace = false;
+    private boolean deferNested = false;
+    private String danglingComment;
     private final TokenProvider lexer;
 
-    private Token popExpected(TokenType... expected) throws ParserException, IOException
+    /**
+     * Forgets the state of the previous document, to start over after the lexer has been reset.
+     */
+    void reset()
     {
-        TokenType current = lexer.peek();
-        if (Arrays.stream(expected).anyMatch(t -> current == t))
-            return lexer.pop();
-
-        if (expected.length != 1)
-            throw new ParserException(this, String.format("Unexpected token %s. Expected one of: %s.", current, Utility.join(", ", expected)));
-
-        throw new ParserException(this, String.format("Unexpected token %s. Expected: %s.", current, expected[0]));
+        finishedWithRBrace = false;
+        deferNested = false;
+        danglingComment = null;
     }
 
-    private Token popExpectedWithParent(TokenType... expected) throws ParserException, IOException
+    private Token popExpected(TokenType expected) throws ParserException, IOException
     {
-        Token current = lexer.peekFull();
-        if (Arrays.stream(expected).anyMatch(current::is))
+        TokenType current = lexer.peek();
+        if (current == expected)
             return lexer.pop();
 
-        if (expected.length != 1)
-            throw new ParserException(this, String.format("Unexpected token %s. Expected one of: %s.", current, Utility.join(", ", expected)));
-
-        throw new ParserException(this, String.format("Unexpected token %s. Expected: %s.", current, expected[0]));
+        throw new ParserException(this, String.format("Unexpected token %s. Expected: %s.", current, expected));
     }
 
-    private void beginPrefixScan()
+    private Token popExpected(Set<TokenType> expected) throws ParserException, IOException
     {
-        prefixStack.push(prefixPos);
-    }
+        TokenType current = lexer.peek();
+        if (expected.contains(current))
+            return lexer.pop();
 
-    private TokenType nextPrefix() throws LexerException, IOException
-    {
-        return lexer.peek(++prefixPos);
+        throw new ParserException(this, String.format("Unexpected token %s. Expected one of: %s.", current, Utility.join(", ", expected.iterator())));
     }
 
-    private void endPrefixScan()
+    private Token popExpectedWithParent(Set<TokenType> expected) throws ParserException, IOException
     {
-        prefixPos = prefixStack.pop();
-    }
+        Token current = lexer.peekFull();
+        if (expected.contains(current.type))
+            return lexer.pop();
 
-    private boolean hasAny(TokenType... tokens) throws LexerException, IOException
-    {
-        TokenType prefix = nextPrefix();
-        return Arrays.stream(tokens).anyMatch(t -> prefix == t);
+        for (TokenType type : expected)
+        {
+            if (current.is(type))
+                return lexer.pop();
+        }
+
+        throw new ParserException(this, String.format("Unexpected token %s. Expected one of: %s.", current, Utility.join(", ", expected.iterator())));
     }
     //endregion
 
@@ -138,45 +254,78 @@ public class Parser implements ContextProvider, AutoCloseable
         return Map.entry(E, end.comment);
     }
 
-    private boolean prefixIdentifier() throws LexerException, IOException
+    private GddlElement<?> element() throws ParserException, IOException
     {
-        beginPrefixScan();
-        boolean r = hasAny(TokenType.IDENTIFIER);
-        endPrefixScan();
-        return r;
+        GddlElement<?> e = elementStart();
+        if (e.isMap() || e.isList())
+        {
+            var closing = e.isMap() ? TokenType.R_BRACE : TokenType.R_BRACKET;
+            contents(e, closing);
+            closeCollection(e, closing);
+        }
+        return e;
     }
 
-    private GddlElement<?> element() throws ParserException, IOException
+    /**
+     * Parses an element, choosing the rule from the current token, and the next one where needed.
+     * For maps and lists, only the tokens up to the opening brace or bracket are consumed,
+     * and the collection is returned empty, for the caller to parse its contents.
+     */
+    private GddlElement<?> elementStart() throws ParserException, IOException
     {
-        if (lexer.peek() == TokenType.NIL) return nullValue(popExpected(TokenType.NIL));
-        if (lexer.peek() == TokenType.NULL) return nullValue(popExpected(TokenType.NULL));
-        if (lexer.peek() == TokenType.TRUE) return booleanValue(popExpected(TokenType.TRUE));
-        if (lexer.peek() == TokenType.FALSE) return booleanValue(popExpected(TokenType.FALSE));
-        if (lexer.peek() == TokenType.INTEGER_LITERAL) return intValue(popExpected(TokenType.INTEGER_LITERAL));
-        if (lexer.peek() == TokenType.HEX_INT_LITERAL) return hexIntValue(popExpected(TokenType.HEX_INT_LITERAL));
-        if (lexer.peek() == TokenType.INTEGER_LITERAL) return intValue(popExpected(TokenType.INTEGER_LITERAL));
-        if (lexer.peek() == TokenType.DECIMAL_LITERAL) return floatValue(popExpected(TokenType.DECIMAL_LITERAL));
-        if (lexer.peek() == TokenType.STRING_LITERAL) return stringValue(popExpected(TokenType.STRING_LITERAL));
-        if (prefixMap()) return map();
-        if (prefixObject()) return object();
-        if (prefixList()) return list();
-        if (prefixReference()) return reference();
+        switch (lexer.peek())
+        {
+            case NIL, NULL ->
+            {
+                return nullValue(lexer.pop());
+            }
+            case TRUE, FALSE ->
+            {
+                return booleanValue(lexer.pop());
+            }
+            case INTEGER_LITERAL ->
+            {
+                return intValue(lexer.pop());
+            }
+            case HEX_INT_LITERAL ->
+            {
+                return hexIntValue(lexer.pop());
+            }
+            case DECIMAL_LITERAL ->
+            {
+                return floatValue(lexer.pop());
+            }
+            case STRING_LITERAL ->
+            {
+                return stringValue(lexer.pop());
+            }
+            case L_BRACE ->
+            {
+                return openMap();
+            }
+            case L_BRACKET ->
+            {
+                return openList();
+            }
+            case IDENTIFIER ->
+            {
+                if (lexer.peek(1) == TokenType.L_BRACE)
+                    return openObject();
+                return reference();
+            }
+            case COLON, SLASH ->
+            {
+                if (PATH_START_TOKENS.contains(lexer.peek(1)))
+                    return reference();
+            }
+        }
 
         throw new ParserException(this, String.format("Internal Error: Token %s did not correspond to any code path.", lexer.peek()));
     }
 
     private Token name() throws ParserException, IOException
     {
-        return popExpected(TokenType.IDENTIFIER, TokenType.STRING_LITERAL);
-    }
-
-    private boolean prefixReference() throws LexerException, IOException
-    {
-        beginPrefixScan();
-        boolean r = hasAny(TokenType.COLON, TokenType.SLASH) && hasAny(TokenType.IDENTIFIER, TokenType.STRING_LITERAL, TokenType.L_BRACKET);
-        endPrefixScan();
-
-        return r || prefixIdentifier();
+        return popExpected(NAME_TOKENS);
     }
 
     private GddlReference reference() throws IOException, ParserException
@@ -200,7 +349,7 @@ public class Parser implements ContextProvider, AutoCloseable
         TokenType firstDelimiter = null;
         if (lexer.peek() == TokenType.COLON || lexer.peek() == TokenType.SLASH)
         {
-            firstToken = popExpected(TokenType.COLON, TokenType.SLASH);
+            firstToken = popExpected(DELIMITER_TOKENS);
             firstDelimiter = firstToken.type;
             pathRef.set(pathRef.get().absolute());
         }
@@ -215,7 +364,7 @@ public class Parser implements ContextProvider, AutoCloseable
                 if (firstDelimiter != null && lexer.peek() != firstDelimiter)
                     throw new ParserException(this, String.format("Query must use consistent delimiters, expected %s, found %s instead", firstDelimiter, lexer.peek()));
 
-                firstDelimiter = popExpected(TokenType.COLON, TokenType.SLASH).type;
+                firstDelimiter = popExpected(DELIMITER_TOKENS).type;
             }
 
             pathComponent(pathRef);
@@ -226,12 +375,12 @@ public class Parser implements ContextProvider, AutoCloseable
 
     private Token pathComponent(AtomicReference<Query> pathRef) throws ParserException, IOException
     {
-        var token = popExpected(TokenType.IDENTIFIER, TokenType.STRING_LITERAL, TokenType.DOT, TokenType.DOUBLE_DOT, TokenType.L_BRACKET);
+        var token = popExpected(PATH_COMPONENT_TOKENS);
         var path = pathRef.get();
         switch (token.type)
         {
             case IDENTIFIER:
-                path = path.byKey(token.text);
+                path = path.byKey(token.getText());
                 break;
             case STRING_LITERAL:
                 path = path.byKey(unescapeString(token));
@@ -250,12 +399,12 @@ public class Parser implements ContextProvider, AutoCloseable
                 if (lexer.peek() == TokenType.CARET)
                 {
                     popExpected(TokenType.CARET);
-                    start = Index.fromEnd(intValue(popExpected(TokenType.INTEGER_LITERAL)).intValue());
+                    start = Index.fromEnd((int) popExpected(TokenType.INTEGER_LITERAL).longValue());
                     hasStart = true;
                 }
                 else if (lexer.peek() == TokenType.INTEGER_LITERAL)
                 {
-                    start = Index.fromStart(intValue(popExpected(TokenType.INTEGER_LITERAL)).intValue());
+                    start = Index.fromStart((int) popExpected(TokenType.INTEGER_LITERAL).longValue());
                     hasStart = true;
                 }
 
@@ -266,18 +415,18 @@ public class Parser implements ContextProvider, AutoCloseable
                     break;
                 }
 
-                var inclusive = popExpected(TokenType.DOUBLE_DOT, TokenType.TRIPLE_DOT);
+                var inclusive = popExpected(RANGE_TOKENS);
 
                 var end = Index.fromEnd(0);
 
                 if (lexer.peek() == TokenType.CARET)
                 {
                     popExpected(TokenType.CARET);
-                    end = Index.fromEnd(intValue(popExpected(TokenType.INTEGER_LITERAL)).intValue());
+                    end = Index.fromEnd((int) popExpected(TokenType.INTEGER_LITERAL).longValue());
                 }
                 else if (lexer.peek() == TokenType.INTEGER_LITERAL)
                 {
-                    end = Index.fromStart(intValue(popExpected(TokenType.INTEGER_LITERAL)).intValue());
+                    end = Index.fromStart((int) popExpected(TokenType.INTEGER_LITERAL).longValue());
                     if (inclusive.type == TokenType.TRIPLE_DOT)
                         end = end.fromEnd() ? Index.fromEnd(end.value() - 1) : Index.fromStart(end.value() + 1);
                 }
@@ -294,15 +443,29 @@ public class Parser implements ContextProvider, AutoCloseable
         return token;
     }
 
-    private boolean prefixMap() throws LexerException, IOException
+    private GddlElement<?> selected(QuerySelection selection) throws ParserException, IOException
     {
-        beginPrefixScan();
-        boolean r = hasAny(TokenType.L_BRACE);
-        endPrefixScan();
-        return r;
+        if (selection.isWhole())
+            return element();
+
+        if (lexer.peek() == TokenType.L_BRACE)
+            return selectedMap(selection);
+
+        if (lexer.peek() == TokenType.IDENTIFIER && lexer.peek(1) == TokenType.L_BRACE)
+        {
+            Token type = name();
+            GddlMap s = selectedMap(selection).withTypeName(type.getText());
+            s.setComment(type.comment);
+            return s;
+        }
+
+        if (lexer.peek() == TokenType.L_BRACKET)
+            return selectedList(selection);
+
+        return element();
     }
 
-    private GddlMap map() throws ParserException, IOException
+    private GddlMap selectedMap(QuerySelection selection) throws ParserException, IOException
     {
         Token openBrace = popExpected(TokenType.L_BRACE);
 
@@ -313,16 +476,24 @@ public class Parser implements ContextProvider, AutoCloseable
         {
             finishedWithRBrace = false;
 
-            var name = popExpectedWithParent(TokenType.IDENTIFIER, TokenType.STRING_LITERAL);
+            var name = popExpectedWithParent(NAME_TOKENS);
 
-            String n = name.type == TokenType.STRING_LITERAL ? unescapeString(name) : name.text;
+            String n = name.type == TokenType.STRING_LITERAL ? unescapeString(name) : name.getText();
 
-            popExpected(TokenType.EQUAL_SIGN, TokenType.COLON);
+            popExpected(ASSIGNMENT_TOKENS);
 
-            GddlElement<?> b = element();
-            b.setComment(name.comment);
-            b.setWhitespace(name.whitespace);
-            s.put(n, b);
+            var child = selection.key(n);
+            if (child != null)
+            {
+                GddlElement<?> b = selected(child);
+                b.setComment(name.comment);
+                b.setWhitespace(name.whitespace);
+                s.put(n, b);
+            }
+            else
+            {
+                skipElement();
+            }
 
             if (lexer.peek() != TokenType.R_BRACE)
             {
@@ -341,63 +512,419 @@ public class Parser implements ContextProvider, AutoCloseable
         return s;
     }
 
-    private boolean prefixObject() throws LexerException, IOException
+    private GddlList selectedList(QuerySelection selection) throws ParserException, IOException
     {
-        beginPrefixScan();
-        boolean r = hasAny(TokenType.IDENTIFIER, TokenType.STRING_LITERAL) && hasAny(TokenType.L_BRACE);
-        endPrefixScan();
-        return r;
+        Token openBrace = popExpected(TokenType.L_BRACKET);
+
+        GddlList s = GddlList.empty();
+        s.setComment(openBrace.comment);
+
+        int index = 0;
+        while (lexer.peek() != TokenType.R_BRACKET)
+        {
+            finishedWithRBrace = false;
+
+            var child = selection.item(index++);
+            if (child != null)
+            {
+                s.add(selected(child));
+            }
+            else
+            {
+                skipElement();
+                s.add(GddlValue.nullValue());
+            }
+
+            if (lexer.peek() != TokenType.R_BRACKET)
+            {
+                if (!finishedWithRBrace || (lexer.peek() == TokenType.COMMA))
+                {
+                    popExpected(TokenType.COMMA);
+                }
+            }
+        }
+
+        var end = popExpected(TokenType.R_BRACKET);
+        s.setTrailingComment(end.comment);
+
+        finishedWithRBrace = true;
+
+        return s;
     }
 
-    private GddlMap object() throws IOException, ParserException
+    /**
+     * Moves past an element without building it. Maps and lists are skipped by matching braces and brackets.
+     */
+    private void skipElement() throws ParserException, IOException
     {
-        Token type = name();
+        switch (lexer.peek())
+        {
+            case L_BRACE, L_BRACKET ->
+            {
+                lexer.pop();
+                lexer.skipNested();
+                finishedWithRBrace = true;
+            }
+            case IDENTIFIER ->
+            {
+                if (lexer.peek(1) == TokenType.L_BRACE)
+                {
+                    lexer.pop();
+                    lexer.pop();
+                    lexer.skipNested();
+                    finishedWithRBrace = true;
+                }
+                else
+                {
+                    queryPath();
+                }
+            }
+            case COLON, SLASH -> queryPath();
+            default -> popExpected(SCALAR_TOKENS);
+        }
+    }
+
+    /**
+     * Parses an element inside a map or list, deferring it if it is a nested map or list.
+     * Only called when deferred parsing is enabled.
+     */
+    private GddlElement<?> deferredChild() throws ParserException, IOException
+    {
+        if (lexer.peek() == TokenType.L_BRACE)
+            return deferredMap();
 
-        GddlMap s = map().withTypeName(type.text);
+        if (lexer.peek() == TokenType.IDENTIFIER && lexer.peek(1) == TokenType.L_BRACE)
+        {
+            Token type = name();
+            GddlMap s = deferredMap().withTypeName(type.getText());
+            s.setComment(type.comment);
+            return s;
+        }
 
-        s.setComment(type.comment);
+        if (lexer.peek() == TokenType.L_BRACKET)
+            return deferredList();
 
+        return elementStart();
+    }
+
+    private GddlMap deferredMap() throws ParserException, IOException
+    {
+        Token openBrace = popExpected(TokenType.L_BRACE);
+        lexer.skipNested();
+        finishedWithRBrace = true;
+
+        var nested = forkAt(openBrace);
+        GddlMap s = GddlMap.deferred(() -> nested.parseNested(Parser::map));
+        s.setComment(openBrace.comment);
         return s;
     }
 
-    private boolean prefixList() throws LexerException, IOException
+    private GddlList deferredList() throws ParserException, IOException
     {
-        beginPrefixScan();
-        boolean r = hasAny(TokenType.L_BRACKET);
-        endPrefixScan();
-        return r;
+        Token openBracket = popExpected(TokenType.L_BRACKET);
+        lexer.skipNested();
+        finishedWithRBrace = true;
+
+        var nested = forkAt(openBracket);
+        GddlList s = GddlList.deferred(() -> nested.parseNested(Parser::list));
+        s.setComment(openBracket.comment);
+        return s;
     }
 
-    private GddlList list() throws ParserException, IOException
+    /**
+     * Prepares the parameters of a parser that will start at the given token.
+     * The parser itself is only created when needed, so that deferred elements don't hold on to a lexer.
+     */
+    private NestedSource forkAt(Token token)
     {
-        Token openBrace = popExpected(TokenType.L_BRACKET);
+        return new NestedSource(((Lexer) lexer).getReader(), token.start, lexer.getWhitespaceMode());
+    }
 
-        GddlList s = GddlList.empty();
-        s.setComment(openBrace.comment);
+    private interface NestedRule<T>
+    {
+        T parse(Parser parser) throws ParserException, IOException;
+    }
 
-        while (lexer.peek() != TokenType.R_BRACKET)
+    private record NestedSource(Reader reader, int offset, WhitespaceMode whitespaceMode)
+    {
+        <T> T parseNested(NestedRule<T> rule)
         {
-            finishedWithRBrace = false;
+            var parser = new Parser(new Lexer(reader.fork(offset), whitespaceMode));
+            parser.deferNested = true;
+            try
+            {
+                return rule.parse(parser);
+            }
+            catch (ParserException | IOException e)
+            {
+                throw new IllegalStateException("Error parsing deferred element", e);
+            }
+        }
+    }
+
+    /**
+     * Parses the root map or list by splitting its children into chunks, and parsing each chunk on the given pool.
+     * The opening token has already been consumed by the main lexer.
+     */
+    private GddlElement<?> parallelRoot(Token open, ForkJoinPool pool) throws ParserException, IOException
+    {
+        var reader = ((Lexer) lexer).getReader();
+        var whitespaceMode = lexer.getWhitespaceMode();
+        boolean isMap = open.type == TokenType.L_BRACE;
 
-            s.add(element());
+        int[] separators = new Lexer(reader.fork(open.end), whitespaceMode).scanSeparators();
+        int commas = separators.length - 1;
+        int close = separators[commas];
 
-            if (lexer.peek() != TokenType.R_BRACKET)
+        int chunks = commas < MIN_PARALLEL_SEPARATORS ? 1 : Math.min(commas, pool.getParallelism() * CHUNKS_PER_THREAD);
+
+        List<ForkJoinTask<GddlElement<?>>> tasks = new ArrayList<>(chunks);
+        int start = open.end;
+        for (int i = 1; i <= chunks; i++)
+        {
+            int end = i == chunks ? close : separators[(int) ((long) i * commas / chunks)];
+            int chunkStart = start;
+            boolean allowEmpty = i == chunks;
+            tasks.add(pool.submit(() -> parseChunk(reader, chunkStart, end, whitespaceMode, isMap, allowEmpty)));
+            start = end + 1;
+        }
+
+        GddlElement<?> s = isMap ? GddlMap.empty() : GddlList.empty();
+        s.setComment(open.comment);
+
+        String trailingComment = "";
+        for (var task : tasks)
+        {
+            var chunk = join(task);
+            if (chunk instanceof GddlMap map)
             {
-                if (!finishedWithRBrace || (lexer.peek() == TokenType.COMMA))
+                for (var entry : map.entrySet())
                 {
-                    popExpected(TokenType.COMMA);
+                    s.asMap().put(entry.getKey(), entry.getValue());
                 }
+                trailingComment = map.getTrailingComment();
+            }
+            else
+            {
+                var list = chunk.asList();
+                s.asList().addAll(list);
+                trailingComment = list.getTrailingComment();
             }
         }
 
-        var end = popExpected(TokenType.R_BRACKET);
-        s.setTrailingComment(end.comment);
+        if (s instanceof GddlMap map)
+            map.setTrailingComment(trailingComment);
+        else
+            s.asList().setTrailingComment(trailingComment);
 
-        finishedWithRBrace = true;
+        // Continue after the closing brace or bracket, to check that it matches, and that nothing else follows.
+        var tail = new Parser(new Lexer(reader.fork(close), whitespaceMode));
+        tail.popExpected(isMap ? TokenType.R_BRACE : TokenType.R_BRACKET);
+        danglingComment = tail.popExpected(TokenType.END).comment;
+
+        return s;
+    }
+
+    private static GddlElement<?> parseChunk(Reader reader, int start, int end, WhitespaceMode whitespaceMode, boolean isMap, boolean allowEmpty)
+            throws ParserException, IOException
+    {
+        var parser = new Parser(new Lexer(reader.fork(start, end), whitespaceMode));
+
+        GddlElement<?> s;
+        int size;
+        if (isMap)
+        {
+            var map = GddlMap.empty();
+            parser.contents(map, TokenType.END);
+            map.setTrailingComment(parser.lexer.peekFull().comment);
+            size = map.size();
+            s = map;
+        }
+        else
+        {
+            var list = GddlList.empty();
+            parser.contents(list, TokenType.END);
+            list.setTrailingComment(parser.lexer.peekFull().comment);
+            size = list.size();
+            s = list;
+        }
+
+        if (size == 0 && !allowEmpty)
+            throw new ParserException(parser, "Unexpected token COMMA.");
 
         return s;
     }
 
+    private static GddlElement<?> join(ForkJoinTask<GddlElement<?>> task) throws ParserException, IOException
+    {
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a chunk to be parsed");
+        }
+        catch (ExecutionException e)
+        {
+            // The pool wraps checked exceptions, so look for the original one along the chain of causes.
+            for (var cause = e.getCause(); cause != null; cause = cause.getCause())
+            {
+                if (cause instanceof ParserException pe) throw pe;
+                if (cause instanceof IOException ioe) throw ioe;
+            }
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException("Error parsing chunk", e.getCause());
+        }
+    }
+
+    private GddlMap map() throws ParserException, IOException
+    {
+        GddlMap s = openMap();
+        contents(s, TokenType.R_BRACE);
+        closeCollection(s, TokenType.R_BRACE);
+        return s;
+    }
+
+    private GddlList list() throws ParserException, IOException
+    {
+        GddlList s = openList();
+        contents(s, TokenType.R_BRACKET);
+        closeCollection(s, TokenType.R_BRACKET);
+        return s;
+    }
+
+    private GddlMap openObject() throws ParserException, IOException
+    {
+        Token type = name();
+        GddlMap s = openMap().withTypeName(type.getText());
+        s.setComment(type.comment);
+        return s;
+    }
+
+    private GddlMap openMap() throws ParserException, IOException
+    {
+        Token openBrace = popExpected(TokenType.L_BRACE);
+
+        GddlMap s = GddlMap.empty();
+        s.setComment(openBrace.comment);
+        return s;
+    }
+
+    private GddlList openList() throws ParserException, IOException
+    {
+        Token openBracket = popExpected(TokenType.L_BRACKET);
+
+        GddlList s = GddlList.empty();
+        s.setComment(openBracket.comment);
+        return s;
+    }
+
+    private void closeCollection(GddlElement<?> collection, TokenType closing) throws ParserException, IOException
+    {
+        var end = popExpected(closing);
+        if (collection instanceof GddlMap map)
+            map.setTrailingComment(end.comment);
+        else
+            collection.asList().setTrailingComment(end.comment);
+
+        finishedWithRBrace = true;
+    }
+
+    /**
+     * Parses the children of a map or list, including any maps and lists nested inside them, until the given closing
+     * token is found. The maps and lists that are still open are kept in an explicit stack instead of the call stack,
+     * so deeply nested documents don't overflow it. The closing token itself is left in the lexer.
+     */
+    private void contents(GddlElement<?> outer, TokenType closing) throws ParserException, IOException
+    {
+        var open = new ArrayDeque<OpenCollection>();
+        var current = new OpenCollection(outer, closing);
+
+        while (true)
+        {
+            if (lexer.peek() == current.closing)
+            {
+                if (open.isEmpty())
+                    return;
+
+                var finished = current;
+                closeCollection(finished.collection, finished.closing);
+                current = open.pop();
+                current.add(finished.collection);
+                separator(current.closing);
+                continue;
+            }
+
+            finishedWithRBrace = false;
+
+            if (current.collection.isMap())
+            {
+                var name = popExpectedWithParent(NAME_TOKENS);
+
+                current.name = name;
+                current.key = name.type == TokenType.STRING_LITERAL ? unescapeString(name) : name.getText();
+
+                popExpected(ASSIGNMENT_TOKENS);
+            }
+
+            GddlElement<?> child = deferNested ? deferredChild() : elementStart();
+            if (!deferNested && (child.isMap() || child.isList()))
+            {
+                open.push(current);
+                current = new OpenCollection(child, child.isMap() ? TokenType.R_BRACE : TokenType.R_BRACKET);
+                continue;
+            }
+
+            current.add(child);
+
+            separator(current.closing);
+        }
+    }
+
+    private void separator(TokenType closing) throws ParserException, IOException
+    {
+        if (lexer.peek() != closing)
+        {
+            if (!finishedWithRBrace || lexer.peek() == TokenType.COMMA)
+            {
+                popExpected(TokenType.COMMA);
+            }
+        }
+    }
+
+    /**
+     * A map or list whose children are being parsed, and the key of the entry being parsed if it is a map.
+     */
+    private static final class OpenCollection
+    {
+        final GddlElement<?> collection;
+        final TokenType closing;
+        Token name;
+        String key;
+
+        OpenCollection(GddlElement<?> collection, TokenType closing)
+        {
+            this.collection = collection;
+            this.closing = closing;
+        }
+
+        void add(GddlElement<?> child)
+        {
+            if (collection instanceof GddlMap map)
+            {
+                child.setComment(name.comment);
+                child.setWhitespace(name.whitespace);
+                map.put(key, child);
+            }
+            else
+            {
+                collection.asList().add(child);
+            }
+        }
+    }
+
     private static GddlValue nullValue(Token token)
     {
         var e = GddlValue.nullValue();
@@ -414,29 +941,21 @@ public class Parser implements ContextProvider, AutoCloseable
 
     private static GddlValue intValue(Token token)
     {
-        var e = GddlValue.of(Long.parseLong(token.text));
+        var e = GddlValue.of(token.longValue());
         e.setComment(token.comment);
         return e;
     }
 
     private static GddlValue hexIntValue(Token token)
     {
-        long num = Long.parseLong(token.text.substring(2), 16);
-        var e = GddlValue.of(num);
+        var e = GddlValue.of(token.longValue());
         e.setComment(token.comment);
         return e;
     }
 
     private static GddlValue floatValue(Token token)
     {
-        double value = switch (token.text)
-        {
-            case ".NaN" -> Double.NaN;
-            case ".Inf", "+.Inf" -> Double.POSITIVE_INFINITY;
-            case "-.Inf" -> Double.NEGATIVE_INFINITY;
-            default -> Double.parseDouble(token.text);
-        };
-        var e = GddlValue.of(value);
+        var e = GddlValue.of(token.doubleValue());
         e.setComment(token.comment);
         return e;
     }
@@ -452,7 +971,7 @@ public class Parser implements ContextProvider, AutoCloseable
     {
         try
         {
-            return Utility.unescapeString(t.text);
+            return t.stringValue();
         }
         catch (IllegalArgumentException ex)
         {
@@ -1,10 +1,9 @@
 package dev.gigaherz.util.gddl2.parsing;
 
 import dev.gigaherz.util.gddl2.exceptions.ReaderException;
-import dev.gigaherz.util.gddl2.internal.ArrayQueue;
-import dev.gigaherz.util.gddl2.internal.Utility;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 public class Reader implements ContextProvider, AutoCloseable
 {
@@ -13,6 +12,41 @@ public class Reader implements ContextProvider, AutoCloseable
     {
         this.sourceName = sourceName;
         this.dataSource = reader;
+        this.text = null;
+        this.buffer = new char[DEFAULT_BUFFER_SIZE];
+    }
+
+    /**
+     * Constructs a reader that works directly on the given in-memory text, without copying it.
+     *
+     * @param text       The text to read from.
+     * @param sourceName The filename to display in parse errors.
+     */
+    public Reader(CharSequence text, String sourceName)
+    {
+        this.sourceName = sourceName;
+        this.dataSource = null;
+        this.text = text;
+        this.buffer = null;
+        this.limit = text.length();
+        this.endOfInput = true;
+    }
+
+    /**
+     * Constructs a reader that works directly on the given in-memory text, without copying it.
+     * The array must not be modified while the reader, or any token produced from it, is in use.
+     *
+     * @param text       The text to read from.
+     * @param sourceName The filename to display in parse errors.
+     */
+    public Reader(char[] text, String sourceName)
+    {
+        this.sourceName = sourceName;
+        this.dataSource = null;
+        this.text = null;
+        this.buffer = text;
+        this.limit = text.length;
+        this.endOfInput = true;
     }
 
     /**
@@ -31,15 +65,16 @@ public class Reader implements ContextProvider, AutoCloseable
      * Returns the Nth character in the lookahead buffer, reading characters from the input reader as needed.
      *
      * @param index The position in the lookahead buffer, starting at 0.
-     * @return The character, or -1 if end of file
-     * @throws ReaderException When trying to read beyond the end of the input
+     * @return The character, or -1 if the position is at or beyond the end of file
+     * @throws ReaderException When the input cannot be read
      * @throws IOException     If an error occurs trying to read from the input
      */
     public int peek(int index) throws ReaderException, IOException
     {
-        require(index + 1);
+        if (position + index >= limit && !require(index + 1))
+            return -1;
 
-        return lookAhead.get(index);
+        return charAt(position + index);
     }
 
     /**
@@ -52,17 +87,14 @@ public class Reader implements ContextProvider, AutoCloseable
      */
     public String read(int count) throws ReaderException, IOException
     {
-        require(count);
+        if (!require(count))
+            throw new ReaderException(this, "Tried to read beyond the end of the file.");
 
-        StringBuilder b = new StringBuilder();
-        while (count-- > 0)
-        {
-            int ch = nextInternal();
-            if (ch < 0)
-                throw new ReaderException(this, "Tried to read beyond the end of the file.");
-            b.append((char) ch);
-        }
-        return b.toString();
+        String s = text != null
+                ? text.subSequence(position, position + count).toString()
+                : new String(buffer, position, count);
+        advance(count);
+        return s;
     }
 
     /**
@@ -74,76 +106,230 @@ public class Reader implements ContextProvider, AutoCloseable
      */
     public void skip(int count) throws ReaderException, IOException
     {
-        require(count);
+        if (!require(count))
+            throw new ReaderException(this, "Tried to read beyond the end of the file.");
+
+        advance(count);
+    }
+
+    /**
+     * Creates another reader over the same in-memory text, starting at the given offset.
+     * The new reader reports locations relative to the start of the text, like this one.
+     *
+     * @param offset The offset to start reading from
+     * @return The new reader
+     * @throws IllegalStateException If the input is not held in memory.
+     */
+    public Reader fork(int offset)
+    {
+        if (!isInMemory())
+            throw new IllegalStateException("Only in-memory inputs can be forked.");
+
+        Reader other = text != null ? new Reader(text, sourceName) : new Reader(buffer, sourceName);
+        other.position = offset;
+        return other;
+    }
+
+    /**
+     * Creates another reader over a part of the same in-memory text. The new reader sees the end of the input
+     * at the given end offset, and reports locations relative to the start of the text, like this one.
+     *
+     * @param offset The offset to start reading from
+     * @param end    The offset at which the input will appear to end
+     * @return The new reader
+     * @throws IllegalStateException If the input is not held in memory.
+     */
+    public Reader fork(int offset, int end)
+    {
+        Reader other = fork(offset);
+        other.limit = end;
+        return other;
+    }
+
+    /**
+     * Starts reading a different in-memory text from the beginning, keeping the buffers allocated by this reader.
+     *
+     * @param text       The text to read from.
+     * @param sourceName The filename to display in parse errors.
+     * @throws IllegalStateException If this reader works on a stream.
+     */
+    void reset(CharSequence text, String sourceName)
+    {
+        if (!isInMemory())
+            throw new IllegalStateException("Only in-memory readers can be reset.");
+
+        this.text = text;
+        this.sourceName = sourceName;
+        this.buffer = null;
+        this.bufferOffset = 0;
+        this.position = 0;
+        this.limit = text.length();
+        this.lineCount = 1;
+        this.scannedUpTo = 0;
+        this.lastWasCr = false;
+    }
+
+    /**
+     * @return True if the whole input is held in memory, so that any part of it can be sliced at any time.
+     */
+    public boolean isInMemory()
+    {
+        return dataSource == null;
+    }
+
+    /**
+     * @return The offset of the first character in the lookahead buffer, counted from the start of the input.
+     */
+    public int getOffset()
+    {
+        return bufferOffset + position;
+    }
+
+    /**
+     * Returns the text between two offsets of the input, without consuming it.
+     * For streamed inputs, only the part of the input currently held in the lookahead window can be sliced.
+     *
+     * @param start The offset of the first character, counted from the start of the input
+     * @param end   The offset after the last character, counted from the start of the input
+     * @return A string with the character sequence
+     * @throws IllegalStateException If the range is not available.
+     */
+    public String slice(int start, int end)
+    {
+        int s = start - bufferOffset;
+        int e = end - bufferOffset;
+        if (s < 0 || e > limit || s > e)
+            throw new IllegalStateException("The requested range is not available in the input buffer.");
 
-        while (count-- > 0)
-        {nextInternal();}
+        return text != null
+                ? text.subSequence(s, e).toString()
+                : new String(buffer, s, e - s);
     }
     //endregion
 
     //region Implementation
-    private final ArrayQueue<Integer> lookAhead = new ArrayQueue<>();
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
 
     private final java.io.Reader dataSource;
-    private final String sourceName;
+    private CharSequence text;
+    private String sourceName;
 
-    private boolean endQueued = false;
-    private int line = 1;
-    private int column = 1;
-    private int lastEol;
+    /**
+     * Window over the input. The characters in [position, limit) are the lookahead.
+     * For in-memory inputs, the window is the whole text, and it never moves.
+     */
+    private char[] buffer;
+    private int bufferOffset;
+    private int position;
+    private int limit;
 
-    private void require(int number) throws ReaderException, IOException
+    private boolean endOfInput = false;
+
+    /**
+     * Offsets at which each line starts, filled in only as far as positions have been requested,
+     * or, for streamed inputs, as far as the data has been dropped from the window.
+     */
+    private int[] lineStarts = new int[]{0, 0, 0, 0, 0, 0, 0, 0};
+    private int lineCount = 1;
+    private int scannedUpTo;
+    private boolean lastWasCr;
+
+    /**
+     * Ensures the lookahead contains at least the given number of characters, refilling the window in bulk.
+     *
+     * @return False if the input ended before enough characters could be made available
+     */
+    private boolean require(int number) throws IOException
     {
-        int needed = number - lookAhead.size();
-        if (needed > 0)
+        if (limit - position >= number)
+            return true;
+
+        if (endOfInput)
+            return false;
+
+        if (number > buffer.length - position)
         {
-            needChars(needed);
+            // Record the lines in the part being dropped while it is still in the window.
+            scanLines(bufferOffset + position);
+
+            int available = limit - position;
+            if (number > buffer.length)
+            {
+                char[] newBuffer = new char[Math.max(number, buffer.length * 2)];
+                System.arraycopy(buffer, position, newBuffer, 0, available);
+                buffer = newBuffer;
+            }
+            else if (available > 0)
+            {
+                System.arraycopy(buffer, position, buffer, 0, available);
+            }
+            bufferOffset += position;
+            position = 0;
+            limit = available;
         }
-    }
 
-    private void needChars(int needed) throws ReaderException, IOException
-    {
-        while (needed-- > 0)
+        while (limit - position < number)
         {
-            if (endQueued)
+            int read = dataSource.read(buffer, limit, buffer.length - limit);
+            if (read < 0)
             {
-                throw new ReaderException(this, "Tried to read beyond the end of the file.");
+                endOfInput = true;
+                return false;
             }
-
-            int ch = dataSource.read();
-            lookAhead.add(ch);
-            if (ch < 0)
-                endQueued = true;
+            limit += read;
         }
+
+        return true;
+    }
+
+    private char charAt(int index)
+    {
+        return text != null ? text.charAt(index) : buffer[index];
     }
 
     /**
      * WARNING: Assumes it has data in the lookahead buffer!
      */
-    private int nextInternal()
+    private void advance(int count)
     {
-        int ch = lookAhead.remove();
+        position += count;
+    }
 
-        column++;
-        if (ch == '\n')
-        {
-            column = 1;
-            if (lastEol != '\r')
-                line++;
-            lastEol = ch;
-        }
-        else if (ch == '\r')
-        {
-            column = 1;
-            line++;
-            lastEol = ch;
-        }
-        else if (lastEol > 0)
+    /**
+     * Records the line starts found in the input up to the given offset.
+     * The range being scanned must still be available in the window.
+     */
+    private void scanLines(int upTo)
+    {
+        for (int i = scannedUpTo; i < upTo; i++)
         {
-            lastEol = 0;
+            char ch = charAt(i - bufferOffset);
+            if (ch == '\n')
+            {
+                if (lastWasCr)
+                    lineStarts[lineCount - 1] = i + 1;
+                else
+                    addLineStart(i + 1);
+                lastWasCr = false;
+            }
+            else if (ch == '\r')
+            {
+                addLineStart(i + 1);
+                lastWasCr = true;
+            }
+            else
+            {
+                lastWasCr = false;
+            }
         }
+        scannedUpTo = Math.max(scannedUpTo, upTo);
+    }
 
-        return ch;
+    private void addLineStart(int offset)
+    {
+        if (lineCount == lineStarts.length)
+            lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+        lineStarts[lineCount++] = offset;
     }
     //endregion
 
@@ -151,7 +337,10 @@ public class Reader implements ContextProvider, AutoCloseable
     @Override
     public String toString()
     {
-        return String.format("{Reader ahead=%s}", Utility.join("", lookAhead.elements()));
+        String ahead = text != null
+                ? text.subSequence(position, limit).toString()
+                : new String(buffer, position, limit - position);
+        return String.format("{Reader ahead=%s}", ahead);
     }
     //endregion
 
@@ -159,7 +348,27 @@ public class Reader implements ContextProvider, AutoCloseable
     @Override
     public ParsingContext getParsingContext()
     {
-        return new ParsingContext(sourceName, line, column);
+        return getParsingContext(getOffset());
+    }
+
+    /**
+     * Computes the line and column of an offset that has already been read.
+     * Line information is only gathered when it is needed, so this is not meant to be called for every token.
+     *
+     * @param offset The offset, counted from the start of the input
+     * @return An object containing the location, to be used in error messages and debugging.
+     */
+    public ParsingContext getParsingContext(int offset)
+    {
+        if (offset > scannedUpTo)
+            scanLines(Math.min(offset, bufferOffset + limit));
+
+        // Last line starting at or before the offset
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        if (index < 0)
+            index = -index - 2;
+
+        return new ParsingContext(sourceName, index + 1, offset - lineStarts[index] + 1);
     }
     //endregion
 
@@ -167,7 +376,8 @@ public class Reader implements ContextProvider, AutoCloseable
     @Override
     public void close() throws IOException
     {
-        dataSource.close();
+        if (dataSource != null)
+            dataSource.close();
     }
     //endregion
 }
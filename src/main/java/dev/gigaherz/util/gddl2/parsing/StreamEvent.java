@@ -0,0 +1,24 @@
+package dev.gigaherz.util.gddl2.parsing;
+
+/**
+ * The kinds of events reported by a {@link GddlStreamReader}.
+ */
+public enum StreamEvent
+{
+    // containers
+    START_MAP,
+    END_MAP,
+    START_LIST,
+    END_LIST,
+
+    // values
+    NULL,
+    BOOLEAN,
+    INTEGER,
+    DECIMAL,
+    STRING,
+    REFERENCE,
+
+    // end
+    END_DOCUMENT
+}
@@ -1,5 +1,6 @@
 package dev.gigaherz.util.gddl2.parsing;
 
+import dev.gigaherz.util.gddl2.internal.Utility;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Objects;
@@ -9,8 +10,6 @@ public class Token implements ContextProvider
     public final String whitespace;
     public final String comment;
     public final TokenType type;
-    public final String text;
-    public final ParsingContext context;
     public Token parent;
 
     public Token(TokenType type, String text, ContextProvider contextProvider, String comment, String whitespace)
@@ -20,6 +19,90 @@ public class Token implements ContextProvider
         this.type = type;
         this.text = text;
         this.context = contextProvider.getParsingContext();
+        this.source = null;
+        this.position = 0;
+        this.start = 0;
+        this.end = 0;
+    }
+
+    /**
+     * Constructs a token whose location is an offset into the source, only turned into a line and column when requested.
+     * If text is null, the text of the token is the range [start, end) of the source, and the string is only created
+     * if {@link #getText()} is called. This requires the source to be held in memory.
+     */
+    Token(TokenType type, String text, Reader source, int position, int start, int end, String comment, String whitespace)
+    {
+        this.whitespace = whitespace;
+        this.comment = comment;
+        this.type = type;
+        this.text = text;
+        this.source = source;
+        this.position = position;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return The source text this token was made from
+     */
+    public String getText()
+    {
+        if (text == null)
+        {
+            if (source != null && source.isInMemory())
+                text = source.slice(start, end);
+            else if (hasValue)
+                text = formatValue();
+        }
+        return text;
+    }
+
+    /**
+     * @return True if the lexer already computed the numeric value of this token.
+     */
+    public boolean hasValue()
+    {
+        return hasValue;
+    }
+
+    /**
+     * Returns the value of an integer literal, parsing the text only if the lexer did not compute it while scanning.
+     *
+     * @return The value
+     * @throws NumberFormatException If the text is not a valid integer literal
+     */
+    public long longValue()
+    {
+        if (hasValue)
+            return longValue;
+
+        String text = getText();
+        if (type == TokenType.HEX_INT_LITERAL)
+        {
+            int sign = text.startsWith("-") || text.startsWith("+") ? 1 : 0;
+            return Long.parseLong(text.substring(0, sign) + text.substring(sign + 2), 16);
+        }
+        return Long.parseLong(text);
+    }
+
+    /**
+     * Returns the value of a decimal literal, parsing the text only if the lexer did not compute it while scanning.
+     *
+     * @return The value
+     * @throws NumberFormatException If the text is not a valid decimal literal
+     */
+    public double doubleValue()
+    {
+        if (hasValue)
+            return doubleValue;
+
+        return switch (getText())
+        {
+            case ".NaN" -> Double.NaN;
+            case ".Inf", "+.Inf" -> Double.POSITIVE_INFINITY;
+            case "-.Inf" -> Double.NEGATIVE_INFINITY;
+            default -> Double.parseDouble(getText());
+        };
     }
 
     public Token withParent(Token parent)
@@ -28,14 +111,60 @@ public class Token implements ContextProvider
         return this;
     }
 
+    /**
+     * Returns the contents of a string literal, without the quotes, and with any escape sequences processed.
+     * If the lexer found no escape sequences, this is a direct slice of the source.
+     *
+     * @return The string value
+     * @throws IllegalArgumentException If the text is not a valid string literal
+     */
+    public String stringValue()
+    {
+        if (!withoutEscapes)
+            return Utility.unescapeString(getText());
+
+        if (text == null && source != null && source.isInMemory())
+            return source.slice(start + 1, end - 1);
+
+        String text = getText();
+        return text.substring(1, text.length() - 1);
+    }
+
+    Token withoutEscapes()
+    {
+        this.withoutEscapes = true;
+        return this;
+    }
+
+    Token withValue(long value)
+    {
+        this.hasValue = true;
+        this.longValue = value;
+        this.doubleValue = value;
+        return this;
+    }
+
+    Token withValue(double value)
+    {
+        this.hasValue = true;
+        this.longValue = (long) value;
+        this.doubleValue = value;
+        return this;
+    }
+
     public Token specialize(TokenType child)
     {
+        if (source != null)
+            return new Token(child, text, source, position, start, end, comment, whitespace).withParent(this);
         return new Token(child, text, this, comment, whitespace).withParent(this);
     }
 
     @Override
     public String toString()
     {
+        String text = getText();
+        ParsingContext context = getParsingContext();
+
         if (text == null)
             return String.format("(%s @ %d:%d)", type, context.line, context.column);
 
@@ -62,23 +191,63 @@ public class Token implements ContextProvider
 
     private boolean equalsImpl(@NotNull Token other)
     {
-        return type == other.type && text.equals(other.text) && context.equals(other.context);
+        return type == other.type && getText().equals(other.getText()) && getParsingContext().equals(other.getParsingContext());
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hash(whitespace, comment, type, text, context);
+        return Objects.hash(whitespace, comment, type, getText(), getParsingContext());
     }
 
     public boolean is(TokenType tokenType)
     {
-        return type == tokenType || (parent != null && parent.is(tokenType));
+        return type.is(tokenType) || (parent != null && parent.is(tokenType));
     }
 
     @Override
     public ParsingContext getParsingContext()
     {
+        if (context == null)
+            context = source.getParsingContext(position);
         return context;
     }
+
+    //region Implementation
+    private String formatValue()
+    {
+        return switch (type)
+        {
+            case HEX_INT_LITERAL -> longValue < 0 ? "-0x" + Long.toHexString(-longValue) : "0x" + Long.toHexString(longValue);
+            case DECIMAL_LITERAL -> Double.isNaN(doubleValue) ? ".NaN"
+                    : Double.isInfinite(doubleValue) ? (doubleValue < 0 ? "-.Inf" : ".Inf")
+                    : Double.toString(doubleValue);
+            default -> Long.toString(longValue);
+        };
+    }
+
+    private String text;
+    private ParsingContext context;
+
+    /**
+     * Numeric value of the literal, if the lexer computed it while scanning.
+     */
+    private boolean hasValue;
+
+    /**
+     * True if the lexer determined this string literal contains no escape sequences.
+     */
+    private boolean withoutEscapes;
+    private long longValue;
+    private double doubleValue;
+
+    /**
+     * If not null, the location of this token is an offset into this source,
+     * and if the text is null, the text is the range [start, end) of the source.
+     */
+    final Reader source;
+    final int position;
+    final int start;
+    final int end;
+    //endregion
 }
@@ -43,6 +43,27 @@ public interface TokenProvider extends ContextProvider, AutoCloseable
      */
     Token pop() throws LexerException, IOException;
 
+    /**
+     * Skips tokens until the brace or bracket that closes an already consumed opening one has been consumed.
+     * Nested braces and brackets are matched by depth only, and the skipped tokens are not validated.
+     *
+     * @throws LexerException When the input ends before the closing brace or bracket
+     * @throws IOException    When accessing the file for data
+     */
+    default void skipNested() throws LexerException, IOException
+    {
+        int depth = 1;
+        while (depth > 0)
+        {
+            switch (pop().type)
+            {
+                case L_BRACE, L_BRACKET -> depth++;
+                case R_BRACE, R_BRACKET -> depth--;
+                case END -> throw new LexerException(this, "Unexpected end of input inside a nested element.");
+            }
+        }
+    }
+
     /**
      * Gets the currently set whitespace processing mode.
      *
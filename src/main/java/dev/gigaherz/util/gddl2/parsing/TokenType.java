@@ -24,17 +24,41 @@ public enum TokenType
     IDENTIFIER,
 
     // identifiers
-    NIL,
-    NULL,
-    TRUE,
-    FALSE,
+    NIL(IDENTIFIER),
+    NULL(IDENTIFIER),
+    TRUE(IDENTIFIER),
+    FALSE(IDENTIFIER),
 
     // type identifiers
-    BOOLEAN,
-    STRING,
-    INTEGER,
-    DECIMAL,
+    BOOLEAN(IDENTIFIER),
+    STRING(IDENTIFIER),
+    INTEGER(IDENTIFIER),
+    DECIMAL(IDENTIFIER),
 
     // end
-    END
+    END;
+
+    private final TokenType parent;
+
+    TokenType()
+    {
+        this(null);
+    }
+
+    TokenType(TokenType parent)
+    {
+        this.parent = parent;
+    }
+
+    /**
+     * Checks if a token of this type is also acceptable where the given type is expected.
+     * Keywords are also identifiers, so that they can be used as map keys.
+     *
+     * @param tokenType The expected type
+     * @return True if the types are the same, or this type is a more specific kind of the expected type.
+     */
+    public boolean is(TokenType tokenType)
+    {
+        return this == tokenType || (parent != null && parent.is(tokenType));
+    }
 }
\ No newline at end of file
@@ -8,7 +8,7 @@ public enum WhitespaceMode
     DROP_ALL,
 
     /**
-     * Preserves comments, but not
+     * Preserves comments, but not whitespace
      */
     PRESERVE_COMMENTS,
 
@@ -15,6 +15,11 @@ public final class ListQueryComponent extends QueryComponent
         this.range = range;
     }
 
+    public Range getRange()
+    {
+        return range;
+    }
+
     @Override
     public Stream<GddlElement<?>> filter(Stream<GddlElement<?>> input)
     {
@@ -6,6 +6,13 @@ import dev.gigaherz.util.gddl2.structure.GddlElement;
 import java.util.Objects;
 import java.util.stream.Stream;
 
+/**
+ * Goes up to the map or list containing each element.
+ * <p>
+ * Frozen elements can be shared by many trees, so they don't keep track of their parent. A query can only go back out of
+ * a frozen element if it went into it, as in {@code /a/../b}. Going up from a frozen element that the query started on,
+ * or that reached this component through a stream, throws an {@link IllegalStateException}.
+ */
 public final class ParentQueryComponent extends QueryComponent
 {
     public static final ParentQueryComponent INSTANCE = new ParentQueryComponent();
@@ -18,10 +25,19 @@ public final class ParentQueryComponent extends QueryComponent
     public Stream<GddlElement<?>> filter(Stream<GddlElement<?>> input)
     {
         return input
-                .<GddlElement<?>>map(GddlElement::getParent)
+                .<GddlElement<?>>map(e -> {
+                    if (e.isFrozen())
+                        throw unknownParent();
+                    return e.getParent();
+                })
                 .filter(Objects::nonNull);
     }
 
+    static IllegalStateException unknownParent()
+    {
+        return new IllegalStateException("Frozen elements don't keep track of their parent. Start the query from an element above this one.");
+    }
+
     @Override
     public String toString(Formatter formatter)
     {
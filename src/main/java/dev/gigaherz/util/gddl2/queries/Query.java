@@ -5,14 +5,17 @@ import dev.gigaherz.util.gddl2.internal.Utility;
 import dev.gigaherz.util.gddl2.parsing.Lexer;
 import dev.gigaherz.util.gddl2.parsing.Parser;
 import dev.gigaherz.util.gddl2.parsing.Reader;
+import dev.gigaherz.util.gddl2.parsing.WhitespaceMode;
 import dev.gigaherz.util.gddl2.structure.GddlElement;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 public class Query
@@ -21,8 +24,8 @@ public class Query
     {
         try
         {
-            var reader = new Reader(new StringReader(pathExpression), "QueryParser.ParsePath(String)");
-            var lexer = new Lexer(reader);
+            var reader = new Reader(pathExpression, "QueryParser.ParsePath(String)");
+            var lexer = new Lexer(reader, WhitespaceMode.DROP_ALL);
             var parser = new Parser(lexer);
             return parser.parseQuery();
         }
@@ -32,14 +35,67 @@ public class Query
         }
     }
 
+    /**
+     * Parses a path expression, or returns the result of parsing it earlier. The most recently compiled
+     * expressions are kept in a bounded cache, shared by all threads, so the returned query is immutable:
+     * use {@link #copy()} to get a query that can be extended.
+     *
+     * @param pathExpression The path expression
+     * @return The immutable query
+     */
+    public static Query compile(String pathExpression)
+    {
+        var query = CACHE.get(pathExpression);
+        if (query != null)
+            return query;
+
+        query = fromString(pathExpression).makeImmutable();
+        if (CACHE.size() >= CACHE_LIMIT)
+        {
+            // Not strictly LRU: any entry can be dropped, so that lookups don't need to record the order of use.
+            var it = CACHE.keySet().iterator();
+            if (it.hasNext())
+            {
+                it.next();
+                it.remove();
+            }
+        }
+        var existing = CACHE.putIfAbsent(pathExpression, query);
+        return existing != null ? existing : query;
+    }
+
+    private static final int CACHE_LIMIT = 256;
+    private static final Map<String, Query> CACHE = new ConcurrentHashMap<>();
+
     private boolean absolute = false;
+    private boolean immutable = false;
     private final List<QueryComponent> pathComponents = new ArrayList<>();
+    private QueryPlan plan;
 
     public boolean isAbsolute()
     {
         return absolute;
     }
 
+    /**
+     * @return True if the query can no longer be modified.
+     */
+    public boolean isImmutable()
+    {
+        return immutable;
+    }
+
+    /**
+     * Prevents any further modification of this query, so that it can be shared.
+     *
+     * @return This query
+     */
+    public Query makeImmutable()
+    {
+        immutable = true;
+        return this;
+    }
+
     public List<QueryComponent> pathComponents()
     {
         return Collections.unmodifiableList(pathComponents);
@@ -47,6 +103,7 @@ public class Query
 
     public Query absolute()
     {
+        requireMutable();
         if (!pathComponents.isEmpty())
             throw new IllegalStateException("Cannot set Absolute after path components have been added.");
         absolute = true;
@@ -55,38 +112,47 @@ public class Query
 
     public Query byKey(String name)
     {
+        requireMutable();
         pathComponents.add(new MapQueryComponent(name));
         return this;
     }
 
     public Query byRange(Range range)
     {
+        requireMutable();
         pathComponents.add(new ListQueryComponent(range));
         return this;
     }
 
     public Query self()
     {
+        requireMutable();
         pathComponents.add(SelfQueryComponent.INSTANCE);
         return this;
     }
 
     public Query parent()
     {
+        requireMutable();
         pathComponents.add(ParentQueryComponent.INSTANCE);
         return this;
     }
 
     public Stream<GddlElement<?>> apply(GddlElement<?> target)
     {
-        var result = Stream.<GddlElement<?>>of(target);
-
-        for (var part : pathComponents)
-        {
-            result = part.filter(result);
-        }
+        return plan().evaluate(target).stream();
+    }
 
-        return result;
+    /**
+     * Finds the first element {@link #apply(GddlElement)} would return, without evaluating the rest of the query.
+     *
+     * @param target The element to start from
+     * @return The first matching element, or null if nothing matches
+     */
+    @Nullable
+    public GddlElement<?> findFirst(GddlElement<?> target)
+    {
+        return plan().first(target);
     }
 
     public Query copy()
@@ -96,14 +162,36 @@ public class Query
         return path;
     }
 
+    /**
+     * Appends the components of this query to another one. If this query is absolute, the other one becomes absolute too,
+     * which requires it to have no components yet.
+     */
     public void copyTo(Query other)
     {
+        other.requireMutable();
+        if (absolute)
+            other.absolute();
         for (var component : pathComponents)
         {
             other.pathComponents.add(component.copy());
         }
     }
 
+    private void requireMutable()
+    {
+        if (immutable)
+            throw new IllegalStateException("This query is immutable. Use copy() to get a query that can be modified.");
+        plan = null;
+    }
+
+    private QueryPlan plan()
+    {
+        var current = plan;
+        if (current == null)
+            plan = current = QueryPlan.compile(pathComponents);
+        return current;
+    }
+
     @Override
     public boolean equals(Object other)
     {
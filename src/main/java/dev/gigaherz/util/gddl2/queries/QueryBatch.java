@@ -0,0 +1,147 @@
+package dev.gigaherz.util.gddl2.queries;
+
+import dev.gigaherz.util.gddl2.structure.GddlElement;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A set of queries evaluated together in a single walk of the document.
+ * The queries are merged into a prefix tree of their components, so the steps they have in common
+ * are taken only once, no matter how many queries share them.
+ * <p>
+ * The batch captures the components of the queries when it is created, so it can be reused for any number of documents,
+ * but it won't see changes made to the queries afterwards.
+ */
+public final class QueryBatch
+{
+    //region API
+    public static QueryBatch of(Query... queries)
+    {
+        return of(Arrays.asList(queries));
+    }
+
+    public static QueryBatch of(Collection<Query> queries)
+    {
+        return new QueryBatch(queries);
+    }
+
+    /**
+     * @return The distinct queries in this batch, in the order they were given.
+     */
+    public List<Query> queries()
+    {
+        return Collections.unmodifiableList(Arrays.asList(queries));
+    }
+
+    /**
+     * Evaluates all the queries.
+     *
+     * @param target The element to start from
+     * @return The results of each query, in the same order as {@link Query#apply(GddlElement)} would return them.
+     * The map contains an entry for every query, even if it matched nothing.
+     */
+    public Map<Query, List<GddlElement<?>>> apply(GddlElement<?> target)
+    {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<GddlElement<?>>[] results = new List[queries.length];
+        for (int i = 0; i < results.length; i++)
+        {
+            results[i] = new ArrayList<>();
+        }
+
+        root.walk(target, null, results);
+
+        var map = new LinkedHashMap<Query, List<GddlElement<?>>>();
+        for (int i = 0; i < queries.length; i++)
+        {
+            map.put(queries[i], results[i]);
+        }
+        return map;
+    }
+    //endregion
+
+    //region Implementation
+    private final Query[] queries;
+    private final Node root = new Node();
+
+    /**
+     * True if any of the queries has parent steps, so that the walk needs to remember the elements it goes through.
+     */
+    private boolean climbs;
+
+    private QueryBatch(Collection<Query> queries)
+    {
+        var distinct = new LinkedHashSet<>(queries);
+        this.queries = distinct.toArray(new Query[0]);
+        for (int i = 0; i < this.queries.length; i++)
+        {
+            var node = root;
+            for (var component : this.queries[i].pathComponents())
+            {
+                if (component instanceof SelfQueryComponent)
+                    continue;
+                if (component instanceof ParentQueryComponent)
+                    climbs = true;
+                node = node.children.computeIfAbsent(component, k -> new Node());
+            }
+            node.matches.add(i);
+        }
+    }
+
+    /**
+     * A step shared by every query whose path starts the same way.
+     */
+    private final class Node
+    {
+        /**
+         * The indices of the queries that end at this node.
+         */
+        final List<Integer> matches = new ArrayList<>();
+        final Map<QueryComponent, Node> children = new LinkedHashMap<>();
+
+        void walk(GddlElement<?> element, @Nullable QueryPlan.Trail trail, List<GddlElement<?>>[] results)
+        {
+            for (int i = 0; i < matches.size(); i++)
+            {
+                results[matches.get(i)].add(element);
+            }
+
+            for (var entry : children.entrySet())
+            {
+                var component = entry.getKey();
+                var child = entry.getValue();
+                if (component instanceof MapQueryComponent map)
+                {
+                    if (element.isMap())
+                    {
+                        var value = element.asMap().get(map.getName());
+                        if (value != null)
+                            child.walk(value, climbs ? new QueryPlan.Trail(element, trail) : null, results);
+                    }
+                }
+                else if (component instanceof ListQueryComponent list)
+                {
+                    if (element.isList())
+                    {
+                        var items = element.asList();
+                        int start = QueryPlan.start(list.getRange(), items);
+                        int end = QueryPlan.end(list.getRange(), items);
+                        var inner = climbs ? new QueryPlan.Trail(items, trail) : null;
+                        for (int i = start; i < end; i++)
+                        {
+                            child.walk(items.get(i), inner, results);
+                        }
+                    }
+                }
+                else if (component instanceof ParentQueryComponent)
+                {
+                    var parent = QueryPlan.parent(element, trail);
+                    if (parent != null)
+                        child.walk(parent.element(), parent.next(), results);
+                }
+            }
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,267 @@
+package dev.gigaherz.util.gddl2.queries;
+
+import dev.gigaherz.util.gddl2.structure.GddlElement;
+import dev.gigaherz.util.gddl2.structure.GddlList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flattened form of the components of a query, evaluated with plain loops instead of a chain of stream stages.
+ * Each step is stored in parallel arrays, so walking a path needs no virtual calls and no intermediate objects.
+ * Results are produced in the same order as applying each component to a stream, one after another.
+ * <p>
+ * If the query has parent steps, the plan also remembers the elements it went through, so that a parent step can go back
+ * out of a frozen element, which doesn't keep track of its parent.
+ */
+final class QueryPlan
+{
+    //region API
+    static QueryPlan compile(List<QueryComponent> components)
+    {
+        int count = components.size();
+        var kinds = new byte[count];
+        var keys = new String[count];
+        var ranges = new Range[count];
+        boolean single = true;
+        boolean climbs = false;
+        for (int i = 0; i < count; i++)
+        {
+            var component = components.get(i);
+            if (component instanceof MapQueryComponent map)
+            {
+                kinds[i] = KEY;
+                keys[i] = map.getName();
+            }
+            else if (component instanceof ListQueryComponent list)
+            {
+                kinds[i] = RANGE;
+                ranges[i] = list.getRange();
+                single = false;
+            }
+            else if (component instanceof ParentQueryComponent)
+            {
+                kinds[i] = PARENT;
+                climbs = true;
+            }
+            else
+            {
+                kinds[i] = SELF;
+            }
+        }
+        return new QueryPlan(kinds, keys, ranges, single, climbs);
+    }
+
+    /**
+     * Evaluates the whole query.
+     *
+     * @param target The element to start from
+     * @return All the matching elements, in order
+     */
+    List<GddlElement<?>> evaluate(GddlElement<?> target)
+    {
+        var results = new ArrayList<GddlElement<?>>();
+        if (single)
+        {
+            var result = follow(target, null, 0);
+            if (result != null)
+                results.add(result);
+        }
+        else
+        {
+            collect(target, null, 0, results);
+        }
+        return results;
+    }
+
+    /**
+     * Finds the first element the query would return, stopping as soon as it is found.
+     *
+     * @param target The element to start from
+     * @return The first matching element, or null if nothing matches
+     */
+    @Nullable
+    GddlElement<?> first(GddlElement<?> target)
+    {
+        return follow(target, null, 0);
+    }
+
+    /**
+     * The elements a query went through to reach the current one, innermost first.
+     */
+    record Trail(GddlElement<?> element, @Nullable Trail next)
+    {
+    }
+    //endregion
+
+    //region Implementation
+    private static final byte SELF = 0;
+    private static final byte PARENT = 1;
+    private static final byte KEY = 2;
+    private static final byte RANGE = 3;
+
+    private final byte[] kinds;
+    private final String[] keys;
+    private final Range[] ranges;
+
+    /**
+     * True if the query has no ranges, so that it can match at most one element.
+     */
+    private final boolean single;
+
+    /**
+     * True if the query has parent steps, so that it needs to remember the elements it goes through.
+     */
+    private final boolean climbs;
+
+    private QueryPlan(byte[] kinds, String[] keys, Range[] ranges, boolean single, boolean climbs)
+    {
+        this.kinds = kinds;
+        this.keys = keys;
+        this.ranges = ranges;
+        this.single = single;
+        this.climbs = climbs;
+    }
+
+    /**
+     * Walks the path from the given step, going depth-first into the items of each range,
+     * and returns the first element reached at the end of the path.
+     */
+    @Nullable
+    private GddlElement<?> follow(GddlElement<?> element, @Nullable Trail trail, int step)
+    {
+        for (; step < kinds.length; step++)
+        {
+            switch (kinds[step])
+            {
+                case KEY ->
+                {
+                    if (!element.isMap())
+                        return null;
+                    var child = element.asMap().get(keys[step]);
+                    if (child == null)
+                        return null;
+                    if (climbs)
+                        trail = new Trail(element, trail);
+                    element = child;
+                }
+                case RANGE ->
+                {
+                    if (!element.isList())
+                        return null;
+                    var list = element.asList();
+                    int start = start(ranges[step], list);
+                    int end = end(ranges[step], list);
+                    var inner = climbs ? new Trail(list, trail) : null;
+                    for (int i = start; i < end; i++)
+                    {
+                        var result = follow(list.get(i), inner, step + 1);
+                        if (result != null)
+                            return result;
+                    }
+                    return null;
+                }
+                case PARENT ->
+                {
+                    var parent = parent(element, trail);
+                    if (parent == null)
+                        return null;
+                    element = parent.element();
+                    trail = parent.next();
+                }
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Walks the path from the given step, going depth-first into the items of each range,
+     * and adds every element reached at the end of the path.
+     */
+    private void collect(GddlElement<?> element, @Nullable Trail trail, int step, List<GddlElement<?>> results)
+    {
+        for (; step < kinds.length; step++)
+        {
+            switch (kinds[step])
+            {
+                case KEY ->
+                {
+                    if (!element.isMap())
+                        return;
+                    var child = element.asMap().get(keys[step]);
+                    if (child == null)
+                        return;
+                    if (climbs)
+                        trail = new Trail(element, trail);
+                    element = child;
+                }
+                case RANGE ->
+                {
+                    if (!element.isList())
+                        return;
+                    var list = element.asList();
+                    int start = start(ranges[step], list);
+                    int end = end(ranges[step], list);
+                    var inner = climbs ? new Trail(list, trail) : null;
+                    for (int i = start; i < end; i++)
+                    {
+                        collect(list.get(i), inner, step + 1, results);
+                    }
+                    return;
+                }
+                case PARENT ->
+                {
+                    var parent = parent(element, trail);
+                    if (parent == null)
+                        return;
+                    element = parent.element();
+                    trail = parent.next();
+                }
+            }
+        }
+        results.add(element);
+    }
+
+    /**
+     * Takes a parent step. Elements that can be modified go to their parent, as {@link ParentQueryComponent} does.
+     * Frozen elements don't know their parent, so they go back to the element the query came from.
+     *
+     * @return The parent and the rest of the trail above it, or null if the element has no parent.
+     * @throws IllegalStateException If the element is frozen, and the query didn't come into it from its parent.
+     */
+    @Nullable
+    static Trail parent(GddlElement<?> element, @Nullable Trail trail)
+    {
+        if (element.isFrozen())
+        {
+            if (trail == null)
+                throw ParentQueryComponent.unknownParent();
+            return trail;
+        }
+
+        var parent = element.getParent();
+        return parent != null ? new Trail(parent, trail != null ? trail.next() : null) : null;
+    }
+
+    /**
+     * @return The index of the first item of the list in the range.
+     * @throws IllegalArgumentException If the range starts before the beginning of the list, or ends before it starts.
+     */
+    static int start(Range range, GddlList list)
+    {
+        int start = range.offset(list.size());
+        if (start < 0 || range.length(list.size()) < 0)
+            throw new IllegalArgumentException(String.format("The range %s does not fit in a list of size %d.", range, list.size()));
+        return start;
+    }
+
+    /**
+     * @return The index after the last item of the list in the range.
+     */
+    static int end(Range range, GddlList list)
+    {
+        return Math.min(range.end().offset(list.size()), list.size());
+    }
+    //endregion
+}
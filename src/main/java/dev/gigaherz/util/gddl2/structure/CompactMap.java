@@ -0,0 +1,239 @@
+package dev.gigaherz.util.gddl2.structure;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Insertion-ordered map from strings to elements, sized for the small maps most documents are made of.
+ * Up to {@link #THRESHOLD} entries are kept in a pair of parallel arrays and found by a linear scan,
+ * comparing the cached hash codes of the keys first. Bigger maps move their entries into a {@link LinkedHashMap}.
+ * <p>
+ * The entries returned when iterating are read-only snapshots; values can only be changed through {@link #put}.
+ */
+final class CompactMap extends AbstractMap<String, GddlElement<?>>
+{
+    //region API
+    @Override
+    public int size()
+    {
+        return hashed != null ? hashed.size() : size;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return hashed != null ? hashed.containsKey(key) : indexOf(key) >= 0;
+    }
+
+    @Override
+    public GddlElement<?> get(Object key)
+    {
+        if (hashed != null)
+            return hashed.get(key);
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : null;
+    }
+
+    @Override
+    public GddlElement<?> put(String key, GddlElement<?> value)
+    {
+        if (hashed != null)
+            return hashed.put(key, value);
+
+        int index = indexOf(key);
+        if (index >= 0)
+        {
+            var previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+
+        if (size == THRESHOLD)
+        {
+            hashed = new LinkedHashMap<>();
+            for (int i = 0; i < size; i++)
+            {
+                hashed.put(keys[i], values[i]);
+            }
+            hashed.put(key, value);
+            keys = null;
+            values = null;
+            size = 0;
+            return null;
+        }
+
+        if (keys == null)
+        {
+            keys = new String[INITIAL_CAPACITY];
+            values = new GddlElement<?>[INITIAL_CAPACITY];
+        }
+        else if (size == keys.length)
+        {
+            keys = Arrays.copyOf(keys, Math.min(size * 2, THRESHOLD));
+            values = Arrays.copyOf(values, keys.length);
+        }
+        keys[size] = key;
+        values[size] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public GddlElement<?> remove(Object key)
+    {
+        if (hashed != null)
+            return hashed.remove(key);
+
+        int index = indexOf(key);
+        if (index < 0)
+            return null;
+        var previous = values[index];
+        removeAt(index);
+        return previous;
+    }
+
+    @Override
+    public void clear()
+    {
+        if (hashed != null)
+        {
+            hashed = null;
+        }
+        else if (keys != null)
+        {
+            Arrays.fill(keys, 0, size, null);
+            Arrays.fill(values, 0, size, null);
+        }
+        size = 0;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<String, GddlElement<?>>> entrySet()
+    {
+        var view = entrySet;
+        if (view == null)
+            entrySet = view = new EntrySet();
+        return view;
+    }
+    //endregion
+
+    //region Implementation
+    private static final int INITIAL_CAPACITY = 4;
+    static final int THRESHOLD = 8;
+
+    private String[] keys;
+    private GddlElement<?>[] values;
+    private int size;
+
+    /**
+     * Holds the entries once the map grows over the threshold. The arrays are dropped at that point.
+     */
+    private LinkedHashMap<String, GddlElement<?>> hashed;
+
+    private EntrySet entrySet;
+
+    private int indexOf(Object key)
+    {
+        if (key == null || keys == null)
+            return -1;
+
+        int hash = key.hashCode();
+        for (int i = 0; i < size; i++)
+        {
+            var k = keys[i];
+            //noinspection StringEquality
+            if (k == key || (k.hashCode() == hash && k.equals(key)))
+                return i;
+        }
+        return -1;
+    }
+
+    private void removeAt(int index)
+    {
+        int moved = size - index - 1;
+        if (moved > 0)
+        {
+            System.arraycopy(keys, index + 1, keys, index, moved);
+            System.arraycopy(values, index + 1, values, index, moved);
+        }
+        size--;
+        keys[size] = null;
+        values[size] = null;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, GddlElement<?>>>
+    {
+        @Override
+        public int size()
+        {
+            return CompactMap.this.size();
+        }
+
+        @NotNull
+        @Override
+        public Iterator<Entry<String, GddlElement<?>>> iterator()
+        {
+            return hashed != null ? new HashedIterator(hashed.entrySet().iterator()) : new ArrayIterator();
+        }
+    }
+
+    private final class ArrayIterator implements Iterator<Entry<String, GddlElement<?>>>
+    {
+        private int next;
+        private boolean canRemove;
+
+        @Override
+        public boolean hasNext()
+        {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, GddlElement<?>> next()
+        {
+            if (hashed != null)
+                throw new ConcurrentModificationException();
+            if (next >= size)
+                throw new NoSuchElementException();
+            canRemove = true;
+            var entry = new SimpleImmutableEntry<String, GddlElement<?>>(keys[next], values[next]);
+            next++;
+            return entry;
+        }
+
+        @Override
+        public void remove()
+        {
+            if (!canRemove)
+                throw new IllegalStateException();
+            canRemove = false;
+            removeAt(--next);
+        }
+    }
+
+    private record HashedIterator(Iterator<Entry<String, GddlElement<?>>> inner)
+            implements Iterator<Entry<String, GddlElement<?>>>
+    {
+        @Override
+        public boolean hasNext()
+        {
+            return inner.hasNext();
+        }
+
+        @Override
+        public Entry<String, GddlElement<?>> next()
+        {
+            var entry = inner.next();
+            return new SimpleImmutableEntry<>(entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void remove()
+        {
+            inner.remove();
+        }
+    }
+    //endregion
+}
@@ -41,6 +41,7 @@ public sealed abstract class GddlElement<T extends GddlElement<T>> extends Numbe
      */
     public final void setWhitespace(@NotNull String value)
     {
+        markChanged();
         whitespace = Objects.requireNonNull(value);
     }
 
@@ -83,6 +84,7 @@ public sealed abstract class GddlElement<T extends GddlElement<T>> extends Numbe
      */
     public final void setComment(@NotNull String value)
     {
+        markChanged();
         comment = Objects.requireNonNull(value);
     }
 
@@ -374,7 +376,17 @@ public sealed abstract class GddlElement<T extends GddlElement<T>> extends Numbe
 
     public Stream<GddlElement<?>> query(String query)
     {
-        return Query.fromString(query).apply(this);
+        return Query.compile(query).apply(this);
+    }
+
+    /**
+     * @param query The path expression
+     * @return The first element the query matches, or null if it matches nothing.
+     */
+    @Nullable
+    public GddlElement<?> queryFirst(String query)
+    {
+        return Query.compile(query).findFirst(this);
     }
 
     /**
@@ -399,13 +411,61 @@ public sealed abstract class GddlElement<T extends GddlElement<T>> extends Numbe
         return Formatter.formatCompact(this);
     }
 
+    /**
+     * Copies this element and all of its descendants. Frozen elements can't change, so they are shared
+     * by the copy instead of being copied, which makes copying a frozen element free.
+     *
+     * @return The copy, or this same element if it is frozen.
+     */
+    @SuppressWarnings("unchecked")
     public final T copy()
     {
-        T c = copyInternal();
-        c.resolve(this);
-        return c;
+        return (T) TreeOperations.copy(this, true);
+    }
+
+    /**
+     * Copies this element and all of its descendants, including the frozen ones, into elements that can be modified.
+     *
+     * @return The copy
+     */
+    @SuppressWarnings("unchecked")
+    public final T mutableCopy()
+    {
+        return (T) TreeOperations.copy(this, false);
     }
 
+    /**
+     * Makes this element and all of its descendants immutable. Frozen maps and lists keep their contents in persistent
+     * collections: instead of being modified in place, they offer methods such as {@link GddlMap#with(String, GddlElement)}
+     * and {@link GddlList#withAdded(GddlElement)}, which return an updated copy that shares everything else with the original.
+     * <p>
+     * Since frozen elements can be shared by many trees, they don't keep track of their parent: {@link #getParent()} returns null,
+     * and queries can only go up from a frozen element if they went into it first, as in {@code /a/../b}.
+     * For the same reason, references must be resolved before freezing:
+     * {@link #resolve(GddlElement)} and {@link #simplify()} leave frozen elements untouched.
+     *
+     * @return The same instance the method was called on.
+     */
+    @SuppressWarnings("unchecked")
+    public final T freeze()
+    {
+        if (!frozen)
+            TreeOperations.freeze(this);
+        return (T) this;
+    }
+
+    /**
+     * @return True if this element can no longer be modified.
+     */
+    public final boolean isFrozen()
+    {
+        return frozen;
+    }
+
+    /**
+     * @return The map or list containing this element, or null if it isn't in one.
+     * Frozen elements can be shared by many trees at once, so they don't keep track of their parent, and always return null.
+     */
     @Nullable
     public GddlElement<?> getParent()
     {
@@ -416,6 +476,7 @@ public sealed abstract class GddlElement<T extends GddlElement<T>> extends Numbe
 
     //region Implementation
     private GddlElement<?> parent;
+    boolean frozen;
 
     String whitespace = "";
     String comment = "";
@@ -424,6 +485,9 @@ public sealed abstract class GddlElement<T extends GddlElement<T>> extends Numbe
     {
     }
 
+    /**
+     * Creates a copy of this element, without any of its children.
+     */
     protected abstract T copyInternal();
 
     protected void copyTo(T other)
@@ -434,10 +498,86 @@ public sealed abstract class GddlElement<T extends GddlElement<T>> extends Numbe
             other.setComment(getComment());
     }
 
+    /**
+     * @return The hash codes cached by a map or list, or null if there are none.
+     */
+    @Nullable
+    TreeOperations.Hashes cachedHashes()
+    {
+        return null;
+    }
+
+    /**
+     * Caches the hash codes of a map or list. Other elements don't cache them.
+     */
+    void setCachedHashes(@Nullable TreeOperations.Hashes hashes)
+    {
+    }
+
     void setParent(@Nullable GddlElement<?> parent)
     {
         this.parent = parent;
     }
+
+    /**
+     * Records that this element was added to a collection. Frozen elements don't keep track of their parent.
+     * An element added to a second collection only remembers the last one, so the hashes cached by the previous one are discarded,
+     * as changes to this element would no longer reach them.
+     */
+    final void attachTo(GddlElement<?> collection)
+    {
+        if (frozen)
+            return;
+        if (parent != null && parent != collection)
+            parent.discardHashes();
+        parent = collection;
+    }
+
+    /**
+     * Records that this element was removed from a collection.
+     */
+    final void detachFrom(GddlElement<?> collection)
+    {
+        if (parent == collection)
+            parent = null;
+    }
+
+    /**
+     * Switches the contents of a map or list to their immutable form.
+     */
+    void freezeContents()
+    {
+    }
+
+    final void requireMutable()
+    {
+        if (frozen)
+            throw new UnsupportedOperationException("This element is frozen. Use mutableCopy() to get a copy that can be modified.");
+    }
+
+    /**
+     * Checks that this element can be modified, and discards the cached hashes of this element and of the collections containing it.
+     */
+    final void markChanged()
+    {
+        requireMutable();
+        setCachedHashes(null);
+        if (parent != null)
+            parent.discardHashes();
+    }
+
+    /**
+     * Discards the cached hashes of this collection and of the collections containing it.
+     * The hashes of a collection are only cached along with those of all its children, so the walk up the tree
+     * stops at the first collection that has none.
+     */
+    private void discardHashes()
+    {
+        for (GddlElement<?> current = this; current != null && current.cachedHashes() != null; current = current.parent)
+        {
+            current.setCachedHashes(null);
+        }
+    }
     //endregion
 
     //region Equality
@@ -453,10 +593,21 @@ public sealed abstract class GddlElement<T extends GddlElement<T>> extends Numbe
 
     @Override
     public int hashCode()
+    {
+        return baseHashCode();
+    }
+
+    final int baseHashCode()
     {
         return Objects.hash(whitespace, comment);
     }
 
+    /**
+     * @return A hash code computed only from what {@link #equals(Object)} compares, so that elements with different
+     * structural hashes are known to be different. Unlike {@link #hashCode()}, it ignores whitespace and comments.
+     */
+    abstract int structuralHashCode();
+
     public int getFormattingComplexity()
     {
         return 1;
@@ -1,11 +1,14 @@
 package dev.gigaherz.util.gddl2.structure;
 
+import dev.gigaherz.util.gddl2.internal.PersistentVector;
 import dev.gigaherz.util.gddl2.internal.Utility;
 import dev.gigaherz.util.gddl2.queries.Range;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.function.IntFunction;
+import java.util.function.Supplier;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -28,6 +31,28 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
         return new GddlList(initial);
     }
 
+    /**
+     * Creates a list whose contents are only obtained when they are first needed.
+     * The loader is called at most once, even if the list is first accessed from several threads at the same time.
+     *
+     * @param loader Produces a list with the contents. Its items are moved into the deferred list.
+     * @return The deferred list
+     */
+    public static GddlList deferred(Supplier<GddlList> loader)
+    {
+        var list = new GddlList();
+        list.deferred = Objects.requireNonNull(loader);
+        return list;
+    }
+
+    /**
+     * @return True if the contents of this list have not been loaded yet.
+     */
+    public boolean isDeferred()
+    {
+        return deferred != null;
+    }
+
     @Override
     public boolean isList()
     {
@@ -42,28 +67,35 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
 
     public boolean hasTrailingComment()
     {
+        materialize();
         return !Utility.isNullOrEmpty(trailingComment);
     }
 
     public String getTrailingComment()
     {
+        materialize();
         return trailingComment;
     }
 
     public void setTrailingComment(String trailingComment)
     {
+        requireMutable();
+        materialize();
         this.trailingComment = trailingComment;
     }
 
     @NotNull
     public Stream<GddlMap> byType(String typeName)
     {
+        materialize();
         return contents.stream().filter(GddlElement::isMap).map(GddlElement::asMap).filter(e -> e.hasTypeName() && e.getTypeName().equals(typeName));
     }
 
     @Override
     public boolean add(GddlElement<?> e)
     {
+        markChanged();
+        materialize();
         Objects.requireNonNull(e);
 
         contents.add(e);
@@ -74,6 +106,8 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
     @Override
     public void add(int before, @NotNull GddlElement<?> e)
     {
+        markChanged();
+        materialize();
         Objects.requireNonNull(e);
 
         contents.add(before, e);
@@ -82,6 +116,8 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
 
     public boolean remove(GddlElement<?> e)
     {
+        markChanged();
+        materialize();
         boolean r = contents.remove(e);
         onRemove(e);
         return r;
@@ -90,6 +126,8 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
     @Override
     public GddlElement<?> remove(int index)
     {
+        markChanged();
+        materialize();
         GddlElement<?> at = contents.get(index);
         contents.remove(index);
         onRemove(at);
@@ -98,25 +136,30 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
 
     public boolean contains(GddlElement<?> element)
     {
+        materialize();
         return contents.contains(element);
     }
 
     public List<GddlElement<?>> get(Range range)
     {
+        materialize();
         int start = range.offset(contents.size());
         int length = range.length(contents.size());
-        return contents.subList(start, length);
+        return new RangeView(start, length);
     }
 
     @Override
     public GddlElement<?> get(int index)
     {
+        materialize();
         return contents.get(index);
     }
 
     @Override
     public GddlElement<?> set(int index, @NotNull GddlElement<?> e)
     {
+        markChanged();
+        materialize();
         Objects.requireNonNull(e);
 
         GddlElement<?> old = contents.get(index);
@@ -134,34 +177,89 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
     @Override
     public int size()
     {
+        materialize();
         return contents.size();
     }
 
     @Override
     public boolean isEmpty()
     {
+        materialize();
         return contents.isEmpty();
     }
 
     @Override
     public void clear()
     {
+        markChanged();
+        materialize();
         contents.forEach(this::onRemove);
         contents.clear();
     }
 
+    /**
+     * Returns a frozen list with the element added at the end, sharing everything else with this list.
+     * The element is frozen too. This list must be frozen, and is left unchanged.
+     *
+     * @param e The element to add
+     * @return The updated list
+     * @throws IllegalStateException If this list is not frozen.
+     */
+    public GddlList withAdded(GddlElement<?> e)
+    {
+        var contents = persistentContents();
+        e.freeze();
+        var list = derive(contents.append(e));
+        e.attachTo(list);
+        return list;
+    }
+
+    /**
+     * Returns a frozen list with the element at the given index replaced, sharing everything else with this list.
+     * The element is frozen too. This list must be frozen, and is left unchanged.
+     *
+     * @param index The index of the element to replace
+     * @param e     The new element
+     * @return The updated list
+     * @throws IllegalStateException If this list is not frozen.
+     */
+    public GddlList withSet(int index, GddlElement<?> e)
+    {
+        var contents = persistentContents();
+        e.freeze();
+        var list = derive(contents.with(index, e));
+        e.attachTo(list);
+        return list;
+    }
+
+    /**
+     * Returns a frozen list without the element at the given index, sharing everything else with this list.
+     * Removing the last element is cheap; removing others rebuilds the part of the list after them.
+     * This list must be frozen, and is left unchanged.
+     *
+     * @param index The index of the element to remove
+     * @return The updated list
+     * @throws IllegalStateException If this list is not frozen.
+     */
+    public GddlList withRemoved(int index)
+    {
+        return derive(persistentContents().without(index));
+    }
+
     public int getFormattingComplexity()
     {
-        return 2 + contents.stream().mapToInt(GddlElement::getFormattingComplexity).sum();
+        return TreeOperations.formattingComplexity(this);
     }
 
     public int indexOf(GddlElement<?> o)
     {
+        materialize();
         return contents.indexOf(o);
     }
 
     public int lastIndexOf(GddlElement<?> o)
     {
+        materialize();
         return contents.lastIndexOf(o);
     }
 
@@ -169,6 +267,7 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
     @Override
     public boolean containsAll(@NotNull java.util.Collection<?> c)
     {
+        materialize();
         return contents.containsAll(c);
     }
 
@@ -203,9 +302,23 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
     //endregion
 
     //region Implementation
-    private final List<GddlElement<?>> contents = new ArrayList<>();
+    /**
+     * An {@link ArrayList} while the list can be modified, and a {@link PersistentVector} once it is frozen.
+     */
+    private List<GddlElement<?>> contents = new ArrayList<>();
     private String trailingComment;
 
+    /**
+     * If not null, the contents have not been loaded yet.
+     */
+    private volatile Supplier<GddlList> deferred;
+
+    /**
+     * The hash codes of this list, cached the first time they are needed.
+     * Null if they haven't been computed yet, or if something in the list has changed since.
+     */
+    private transient TreeOperations.Hashes hashes;
+
     private GddlList()
     {
     }
@@ -215,14 +328,128 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
         this.addAll(init);
     }
 
+    private void materialize()
+    {
+        if (deferred != null)
+        {
+            synchronized (this)
+            {
+                var loader = deferred;
+                if (loader != null)
+                {
+                    var loaded = loader.get();
+                    for (var e : loaded.contents)
+                    {
+                        contents.add(e);
+                        onAdd(e);
+                    }
+                    trailingComment = loaded.trailingComment;
+                    deferred = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * A live view of part of the list, as returned by {@link #get(Range)}.
+     * Changes made through it go through the list, so they are tracked like any other.
+     */
+    private final class RangeView extends AbstractList<GddlElement<?>>
+    {
+        private final int start;
+        private int end;
+
+        RangeView(int start, int end)
+        {
+            Objects.checkFromToIndex(start, end, contents.size());
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public GddlElement<?> get(int index)
+        {
+            return GddlList.this.get(start + Objects.checkIndex(index, size()));
+        }
+
+        @Override
+        public int size()
+        {
+            return end - start;
+        }
+
+        @Override
+        public GddlElement<?> set(int index, GddlElement<?> e)
+        {
+            return GddlList.this.set(start + Objects.checkIndex(index, size()), e);
+        }
+
+        @Override
+        public void add(int index, GddlElement<?> e)
+        {
+            GddlList.this.add(start + Objects.checkIndex(index, size() + 1), e);
+            end++;
+            modCount++;
+        }
+
+        @Override
+        public GddlElement<?> remove(int index)
+        {
+            var e = GddlList.this.remove(start + Objects.checkIndex(index, size()));
+            end--;
+            modCount++;
+            return e;
+        }
+    }
+
+    @Override
+    TreeOperations.Hashes cachedHashes()
+    {
+        return hashes;
+    }
+
+    @Override
+    void setCachedHashes(@Nullable TreeOperations.Hashes hashes)
+    {
+        this.hashes = hashes;
+    }
+
     private void onAdd(GddlElement<?> e)
     {
-        e.setParent(this);
+        e.attachTo(this);
     }
 
     private void onRemove(GddlElement<?> e)
     {
-        e.setParent(null);
+        e.detachFrom(this);
+    }
+
+    @SuppressWarnings("unchecked")
+    private PersistentVector<GddlElement<?>> persistentContents()
+    {
+        if (!isFrozen())
+            throw new IllegalStateException("Only frozen lists can be updated by creating a new version. Call freeze() first.");
+        return (PersistentVector<GddlElement<?>>) contents;
+    }
+
+    /**
+     * Creates a frozen list with the same comments as this one, and the given contents.
+     */
+    private GddlList derive(PersistentVector<GddlElement<?>> newContents)
+    {
+        var list = new GddlList();
+        copyTo(list);
+        list.trailingComment = trailingComment;
+        list.contents = newContents;
+        list.frozen = true;
+        return list;
+    }
+
+    @Override
+    void freezeContents()
+    {
+        materialize();
+        contents = PersistentVector.copyOf(contents);
     }
     //endregion
 
@@ -231,6 +458,7 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
     @NotNull
     public Object @NotNull [] toArray()
     {
+        materialize();
         return contents.toArray();
     }
 
@@ -238,12 +466,14 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
     @NotNull
     public <T> T @NotNull [] toArray(@NotNull T @NotNull [] a)
     {
+        materialize();
         return contents.toArray(a);
     }
 
     @Override
     public <T> T[] toArray(@NotNull IntFunction<T[]> generator)
     {
+        materialize();
         return contents.toArray(generator);
     }
 
@@ -281,30 +511,18 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
         return collection;
     }
 
-    @Override
-    protected void copyTo(GddlList other)
-    {
-        super.copyTo(other);
-        for (GddlElement<?> e : contents)
-        {
-            other.add(e.copy());
-        }
-    }
-
     @Override
     public void resolve(GddlElement<?> root)
     {
-        for (GddlElement<?> el : contents)
-        {
-            el.resolve(root);
-        }
+        TreeOperations.resolve(this, root);
     }
 
     @Override
     public GddlList simplify()
     {
-        contents.replaceAll(GddlElement::simplify);
-
+        if (isFrozen())
+            return this;
+        TreeOperations.simplify(this);
         return this;
     }
     //endregion
@@ -329,13 +547,19 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
 
     public boolean equalsImpl(@NotNull GddlList other)
     {
-        return Utility.listEquals(contents, other.contents);
+        return TreeOperations.equals(this, other);
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hash(super.hashCode(), contents);
+        return TreeOperations.hashes(this).hash();
+    }
+
+    @Override
+    int structuralHashCode()
+    {
+        return TreeOperations.hashes(this).structural();
     }
 
     //endregion
@@ -345,6 +569,7 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
     @NotNull
     public Iterator<GddlElement<?>> iterator()
     {
+        materialize();
         return new Iterator<>()
         {
             private GddlElement<?> current;
@@ -366,6 +591,7 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
             @Override
             public void remove()
             {
+                markChanged();
                 it.remove();
                 onRemove(current);
             }
@@ -383,6 +609,7 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
     @NotNull
     public ListIterator<GddlElement<?>> listIterator(int index)
     {
+        materialize();
         return new ListIterator<>()
         {
             private final ListIterator<GddlElement<?>> lit = contents.listIterator(index);
@@ -429,6 +656,7 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
             @Override
             public void remove()
             {
+                markChanged();
                 lit.remove();
                 onRemove(current);
             }
@@ -436,6 +664,7 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
             @Override
             public void set(GddlElement<?> e)
             {
+                markChanged();
                 Objects.requireNonNull(e);
 
                 onRemove(current);
@@ -446,6 +675,7 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
             @Override
             public void add(GddlElement<?> e)
             {
+                markChanged();
                 Objects.requireNonNull(e);
 
                 lit.add(e);
@@ -458,6 +688,7 @@ public final class GddlList extends GddlElement<GddlList> implements List<GddlEl
     @NotNull
     public List<GddlElement<?>> subList(int fromIndex, int toIndex)
     {
+        materialize();
         return Collections.unmodifiableList(contents.subList(fromIndex, toIndex));
     }
     //endregion
@@ -2,8 +2,11 @@ package dev.gigaherz.util.gddl2.structure;
 
 import dev.gigaherz.util.gddl2.internal.Utility;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 @SuppressWarnings("unused")
@@ -35,6 +38,28 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
         return new GddlMap(List.of(Map.entry(key, value), Map.entry(key2, value2), Map.entry(key3, value3), Map.entry(key4, value4)));
     }
 
+    /**
+     * Creates a map whose contents are only obtained when they are first needed.
+     * The loader is called at most once, even if the map is first accessed from several threads at the same time.
+     *
+     * @param loader Produces a map with the contents. Its entries are moved into the deferred map.
+     * @return The deferred map
+     */
+    public static GddlMap deferred(Supplier<GddlMap> loader)
+    {
+        var map = new GddlMap();
+        map.deferred = Objects.requireNonNull(loader);
+        return map;
+    }
+
+    /**
+     * @return True if the contents of this map have not been loaded yet.
+     */
+    public boolean isDeferred()
+    {
+        return deferred != null;
+    }
+
     @SafeVarargs
     public static GddlMap of(Map.Entry<String, GddlElement<?>>... values)
     {
@@ -60,16 +85,20 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
 
     public boolean hasTrailingComment()
     {
+        materialize();
         return !Utility.isNullOrEmpty(trailingComment);
     }
 
     public String getTrailingComment()
     {
+        materialize();
         return trailingComment;
     }
 
     public void setTrailingComment(String trailingComment)
     {
+        requireMutable();
+        materialize();
         this.trailingComment = trailingComment;
     }
 
@@ -88,6 +117,7 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
     {
         if (!Utility.isValidIdentifier(value))
             throw new IllegalArgumentException("Type value must be a valid identifier");
+        markChanged();
         typeName = value;
         return this;
     }
@@ -95,12 +125,15 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
     @NotNull
     public Optional<GddlElement<?>> find(String name)
     {
+        materialize();
         return Optional.ofNullable(contents.get(name));
     }
 
     @Override
     public GddlElement<?> put(String key, GddlElement<?> value)
     {
+        markChanged();
+        materialize();
         Objects.requireNonNull(key);
         Objects.requireNonNull(value);
 
@@ -143,6 +176,8 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
 
     public GddlElement<?> remove(String key)
     {
+        markChanged();
+        materialize();
         GddlElement<?> e = contents.remove(key);
         if (e != null)
             onRemove(e);
@@ -151,6 +186,8 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
 
     public boolean remove(String key, GddlElement<?> e)
     {
+        markChanged();
+        materialize();
         boolean r = contents.remove(key, e);
         if (r) onRemove(e);
         return r;
@@ -158,16 +195,19 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
 
     public boolean containsKey(String key)
     {
+        materialize();
         return contents.containsKey(key);
     }
 
     public boolean containsValue(GddlElement<?> element)
     {
+        materialize();
         return contents.containsValue(element);
     }
 
     public GddlElement<?> get(String key)
     {
+        materialize();
         return contents.get(key);
     }
 
@@ -224,18 +264,22 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
     @Override
     public int size()
     {
+        materialize();
         return contents.size();
     }
 
     @Override
     public boolean isEmpty()
     {
+        materialize();
         return contents.isEmpty();
     }
 
     @Override
     public void clear()
     {
+        markChanged();
+        materialize();
         contents.values().forEach(this::onRemove);
         contents.clear();
     }
@@ -244,42 +288,141 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
     @Override
     public Set<String> keySet()
     {
-        return contents.keySet();
+        materialize();
+        return new AbstractSet<>()
+        {
+            @Override
+            public Iterator<String> iterator()
+            {
+                return viewIterator(Entry::getKey);
+            }
+
+            @Override
+            public int size()
+            {
+                return contents.size();
+            }
+
+            @Override
+            public boolean contains(Object o)
+            {
+                return contents.containsKey(o);
+            }
+
+            @Override
+            public boolean remove(Object o)
+            {
+                if (!(o instanceof String key) || !contents.containsKey(key))
+                    return false;
+                GddlMap.this.remove(key);
+                return true;
+            }
+        };
     }
 
     @NotNull
     @Override
     public Collection<GddlElement<?>> values()
     {
-        return contents.values();
+        materialize();
+        return new AbstractCollection<>()
+        {
+            @Override
+            public Iterator<GddlElement<?>> iterator()
+            {
+                return viewIterator(Entry::getValue);
+            }
+
+            @Override
+            public int size()
+            {
+                return contents.size();
+            }
+
+            @Override
+            public boolean contains(Object o)
+            {
+                return contents.containsValue(o);
+            }
+        };
     }
 
     @NotNull
     @Override
     public Set<Entry<String, GddlElement<?>>> entrySet()
     {
-        return contentsView.entrySet();
+        materialize();
+        return Collections.unmodifiableSet(contents.entrySet());
     }
 
     public int getFormattingComplexity()
     {
-        return 2 + contents.values().stream().mapToInt(i -> 3 * i.getFormattingComplexity()).sum();
+        return TreeOperations.formattingComplexity(this);
+    }
+
+    /**
+     * Returns a frozen map with the key associated to the value, sharing everything else with this map.
+     * The value is frozen too. This map must be frozen, and is left unchanged.
+     *
+     * @param key   The key
+     * @param value The value
+     * @return The updated map
+     * @throws IllegalStateException If this map is not frozen.
+     */
+    public GddlMap with(String key, GddlElement<?> value)
+    {
+        Objects.requireNonNull(key);
+        var contents = persistentContents();
+        value.freeze();
+        var map = derive(contents.with(key, value));
+        value.attachTo(map);
+        return map;
+    }
+
+    /**
+     * Returns a frozen map without the key, sharing everything else with this map.
+     * This map must be frozen, and is left unchanged.
+     *
+     * @param key The key
+     * @return The updated map, or this same map if it doesn't contain the key.
+     * @throws IllegalStateException If this map is not frozen.
+     */
+    public GddlMap without(String key)
+    {
+        var contents = persistentContents();
+        var updated = contents.without(key);
+        //noinspection NumberEquality
+        return updated == contents ? this : derive(updated);
     }
 
     public Stream<String> keysOf(GddlElement<?> value)
     {
+        materialize();
         //noinspection NumberEquality
         return contents.entrySet().stream().filter(kv -> kv.getValue() == value).map(Entry::getKey);
     }
     //endregion
 
     //region Implementation
-    private final Map<String, GddlElement<?>> contents = new LinkedHashMap<>();
-    private final Map<String, GddlElement<?>> contentsView = Collections.unmodifiableMap(contents);
+    /**
+     * A {@link CompactMap} while the map can be modified, and a {@link PersistentMap} once it is frozen.
+     */
+    private Map<String, GddlElement<?>> contents = new CompactMap();
     private String trailingComment;
 
     private String typeName;
 
+    /**
+     * If not null, the contents have not been loaded yet.
+     */
+    private volatile Supplier<GddlMap> deferred;
+
+    /**
+     * The hash codes of this map, cached the first time they are needed.
+     * Null if they haven't been computed yet, or if something in the map has changed since.
+     */
+    private transient TreeOperations.Hashes hashes;
+
     private GddlMap()
     {
     }
@@ -290,14 +433,111 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
         {put(entry.getKey(), entry.getValue());}
     }
 
+    private void materialize()
+    {
+        if (deferred != null)
+        {
+            synchronized (this)
+            {
+                var loader = deferred;
+                if (loader != null)
+                {
+                    var loaded = loader.get();
+                    for (var entry : loaded.contents.entrySet())
+                    {
+                        contents.put(entry.getKey(), entry.getValue());
+                        onAdd(entry.getValue());
+                    }
+                    trailingComment = loaded.trailingComment;
+                    deferred = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterates the entries of the map for {@link #keySet()} and {@link #values()}.
+     * Removing through it is tracked like {@link #remove(String)}.
+     */
+    private <V> Iterator<V> viewIterator(Function<Entry<String, GddlElement<?>>, V> getter)
+    {
+        return new Iterator<>()
+        {
+            private final Iterator<Entry<String, GddlElement<?>>> it = contents.entrySet().iterator();
+            private GddlElement<?> current;
+
+            @Override
+            public boolean hasNext()
+            {
+                return it.hasNext();
+            }
+
+            @Override
+            public V next()
+            {
+                var entry = it.next();
+                current = entry.getValue();
+                return getter.apply(entry);
+            }
+
+            @Override
+            public void remove()
+            {
+                markChanged();
+                it.remove();
+                onRemove(current);
+            }
+        };
+    }
+
+    @Override
+    TreeOperations.Hashes cachedHashes()
+    {
+        return hashes;
+    }
+
+    @Override
+    void setCachedHashes(@Nullable TreeOperations.Hashes hashes)
+    {
+        this.hashes = hashes;
+    }
+
     private void onAdd(GddlElement<?> e)
     {
-        e.setParent(this);
+        e.attachTo(this);
     }
 
     private void onRemove(GddlElement<?> e)
     {
-        e.setParent(null);
+        e.detachFrom(this);
+    }
+
+    private PersistentMap persistentContents()
+    {
+        if (!isFrozen())
+            throw new IllegalStateException("Only frozen maps can be updated by creating a new version. Call freeze() first.");
+        return (PersistentMap) contents;
+    }
+
+    /**
+     * Creates a frozen map with the same type name and comments as this one, and the given contents.
+     */
+    private GddlMap derive(PersistentMap newContents)
+    {
+        var map = new GddlMap();
+        copyTo(map);
+        map.typeName = typeName;
+        map.trailingComment = trailingComment;
+        map.contents = newContents;
+        map.frozen = true;
+        return map;
+    }
+
+    @Override
+    void freezeContents()
+    {
+        materialize();
+        contents = PersistentMap.copyOf(contents);
     }
 
     /**
@@ -307,6 +547,7 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
     @Override
     public boolean containsKey(Object key)
     {
+        materialize();
         return contents.containsKey(key);
     }
 
@@ -317,6 +558,7 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
     @Override
     public boolean containsValue(Object value)
     {
+        materialize();
         return contents.containsValue(value);
     }
 
@@ -350,32 +592,18 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
         return collection;
     }
 
-    @Override
-    protected void copyTo(GddlMap other)
-    {
-        super.copyTo(other);
-        for (Map.Entry<String, GddlElement<?>> e : contents.entrySet())
-        {
-            other.put(e.getKey(), e.getValue().copy());
-        }
-    }
-
     @Override
     public void resolve(GddlElement<?> root)
     {
-        for (GddlElement<?> el : contents.values())
-        {
-            el.resolve(root);
-        }
+        TreeOperations.resolve(this, root);
     }
 
     @Override
     public GddlMap simplify()
     {
-        for (Map.Entry<String, GddlElement<?>> entry : contents.entrySet())
-        {
-            put(entry.getKey(), entry.getValue().simplify());
-        }
+        if (isFrozen())
+            return this;
+        TreeOperations.simplify(this);
         return this;
     }
     //endregion
@@ -400,14 +628,19 @@ public final class GddlMap extends GddlElement<GddlMap> implements Map<String, G
 
     public boolean equalsImpl(@NotNull GddlMap other)
     {
-        return contents.equals(other.contents) &&
-                Objects.equals(typeName, other.typeName);
+        return TreeOperations.equals(this, other);
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hash(super.hashCode(), contents, typeName);
+        return TreeOperations.hashes(this).hash();
+    }
+
+    @Override
+    int structuralHashCode()
+    {
+        return TreeOperations.hashes(this).structural();
     }
 
     //endregion
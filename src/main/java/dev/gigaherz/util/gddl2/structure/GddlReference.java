@@ -68,7 +68,7 @@ public final class GddlReference extends GddlElement<GddlReference>
     @Override
     protected GddlReference copyInternal()
     {
-        var reference = new GddlReference(path.copy());
+        var reference = new GddlReference(new Query());
         copyTo(reference);
         return reference;
     }
@@ -83,7 +83,8 @@ public final class GddlReference extends GddlElement<GddlReference>
     @Override
     public void resolve(GddlElement<?> root)
     {
-        if (isResolved())
+        // A frozen reference may be shared by many trees, so it keeps whatever it was resolved to before freezing.
+        if (isResolved() || isFrozen())
             return;
 
         TryResolve(root, !isAbsolute());
@@ -179,5 +180,11 @@ public final class GddlReference extends GddlElement<GddlReference>
     {
         return Objects.hash(super.hashCode(), path);
     }
+
+    @Override
+    int structuralHashCode()
+    {
+        return Objects.hashCode(path);
+    }
     //endregion
 }
\ No newline at end of file
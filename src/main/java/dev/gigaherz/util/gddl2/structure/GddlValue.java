@@ -78,13 +78,15 @@ public final class GddlValue extends GddlElement<GddlValue>
     @Override
     public String stringValue()
     {
-        return (String) Objects.requireNonNull(data);
+        require(STRING, "String");
+        return string;
     }
 
     @Override
     public boolean booleanValue()
     {
-        return (boolean) Objects.requireNonNull(data);
+        require(BOOLEAN, "Boolean");
+        return bits != 0;
     }
 
     @Override
@@ -108,7 +110,8 @@ public final class GddlValue extends GddlElement<GddlValue>
     @Override
     public long longValue()
     {
-        return (long) Objects.requireNonNull(data);
+        require(INTEGER, "Long");
+        return bits;
     }
 
     @Override
@@ -120,66 +123,126 @@ public final class GddlValue extends GddlElement<GddlValue>
     @Override
     public double doubleValue()
     {
-        return (double) Objects.requireNonNull(data);
+        require(DECIMAL, "Double");
+        return Double.longBitsToDouble(bits);
     }
 
     @Override
     public boolean isNull()
     {
-        return data == null;
+        return kind == NULL;
     }
 
     @Override
     public boolean isBoolean()
     {
-        return data instanceof Boolean;
+        return kind == BOOLEAN;
     }
 
     @Override
     public boolean isInteger()
     {
-        return data instanceof Long;
+        return kind == INTEGER;
     }
 
     @Override
     public boolean isDouble()
     {
-        return data instanceof Double;
+        return kind == DECIMAL;
     }
 
     @Override
     public boolean isString()
     {
-        return data instanceof String;
+        return kind == STRING;
     }
     //endregion
 
     //region Implementation
-    private Object data;
+    private static final byte NULL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte INTEGER = 2;
+    private static final byte DECIMAL = 3;
+    private static final byte STRING = 4;
+
+    /**
+     * Which of the kinds of value this is, and so which of the fields below holds the data.
+     */
+    private byte kind;
+
+    /**
+     * The data of booleans (0 or 1), integers, and decimals (as given by {@link Double#doubleToLongBits(double)}).
+     */
+    private long bits;
+
+    private String string;
 
     private GddlValue()
     {
-        data = null;
+        kind = NULL;
     }
 
     private GddlValue(boolean valueData)
     {
-        data = valueData;
+        kind = BOOLEAN;
+        bits = valueData ? 1 : 0;
     }
 
     private GddlValue(String valueData)
     {
-        data = valueData;
+        // Values built from a null string have always been null values.
+        kind = valueData != null ? STRING : NULL;
+        string = valueData;
     }
 
     private GddlValue(long valueData)
     {
-        data = valueData;
+        kind = INTEGER;
+        bits = valueData;
     }
 
     private GddlValue(double valueData)
     {
-        data = valueData;
+        kind = DECIMAL;
+        bits = Double.doubleToLongBits(valueData);
+    }
+
+    /**
+     * Fails the same way casting a boxed value to the wrong type would.
+     */
+    private void require(byte expected, String typeName)
+    {
+        if (kind == expected)
+            return;
+        if (kind == NULL)
+            throw new NullPointerException();
+        throw new ClassCastException(String.format("Value of kind %s cannot be read as %s", kindName(), typeName));
+    }
+
+    private String kindName()
+    {
+        return switch (kind)
+        {
+            case BOOLEAN -> "Boolean";
+            case INTEGER -> "Long";
+            case DECIMAL -> "Double";
+            case STRING -> "String";
+            default -> "null";
+        };
+    }
+
+    /**
+     * @return The same hash code the boxed form of the data would have.
+     */
+    private int dataHashCode()
+    {
+        return switch (kind)
+        {
+            case BOOLEAN -> Boolean.hashCode(bits != 0);
+            case INTEGER, DECIMAL -> Long.hashCode(bits);
+            case STRING -> string.hashCode();
+            default -> 0;
+        };
     }
     //endregion
 
@@ -196,7 +259,9 @@ public final class GddlValue extends GddlElement<GddlValue>
     protected void copyTo(GddlValue other)
     {
         super.copyTo(other);
-        other.data = data;
+        other.kind = kind;
+        other.bits = bits;
+        other.string = string;
     }
     //endregion
 
@@ -220,13 +285,19 @@ public final class GddlValue extends GddlElement<GddlValue>
 
     private boolean equalsImpl(@NotNull GddlValue value)
     {
-        return Objects.equals(data, value.data);
+        return kind == value.kind && bits == value.bits && Objects.equals(string, value.string);
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hash(super.hashCode(), data);
+        return 31 * (31 + super.hashCode()) + dataHashCode();
+    }
+
+    @Override
+    int structuralHashCode()
+    {
+        return dataHashCode();
     }
     //endregion
 }
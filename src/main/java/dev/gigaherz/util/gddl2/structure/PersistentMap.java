@@ -0,0 +1,157 @@
+package dev.gigaherz.util.gddl2.structure;
+
+import dev.gigaherz.util.gddl2.internal.PersistentHashMap;
+import dev.gigaherz.util.gddl2.internal.PersistentVector;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Immutable, insertion-ordered map used by frozen maps. The entries are kept in order in a persistent vector,
+ * and a persistent hash map gives the position of each key in the vector. Removed entries leave a gap
+ * in the vector, which is compacted once the gaps outnumber the entries.
+ */
+final class PersistentMap extends AbstractMap<String, GddlElement<?>>
+{
+    //region API
+    static final PersistentMap EMPTY = new PersistentMap(PersistentHashMap.empty(), PersistentVector.empty());
+
+    static PersistentMap copyOf(Map<String, GddlElement<?>> map)
+    {
+        if (map instanceof PersistentMap persistent)
+            return persistent;
+
+        var result = EMPTY;
+        for (var entry : map.entrySet())
+        {
+            result = result.with(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    @Override
+    public int size()
+    {
+        return positions.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return key != null && positions.containsKey(key);
+    }
+
+    @Override
+    public GddlElement<?> get(Object key)
+    {
+        if (key == null)
+            return null;
+        var position = positions.get(key);
+        return position != null ? entries.get(position).getValue() : null;
+    }
+
+    /**
+     * @return A map with the key associated to the value. Keys that were already present keep their position.
+     */
+    PersistentMap with(String key, GddlElement<?> value)
+    {
+        var entry = new SimpleImmutableEntry<String, GddlElement<?>>(key, value);
+        var position = positions.get(key);
+        if (position != null)
+            return new PersistentMap(positions, entries.with(position, entry));
+        return new PersistentMap(positions.with(key, entries.size()), entries.append(entry));
+    }
+
+    /**
+     * @return A map without the key.
+     */
+    PersistentMap without(String key)
+    {
+        var position = positions.get(key);
+        if (position == null)
+            return this;
+
+        var newPositions = positions.without(key);
+        var newEntries = position == entries.size() - 1 ? entries.withoutLast() : entries.with(position, null);
+        var result = new PersistentMap(newPositions, newEntries);
+        int gaps = newEntries.size() - newPositions.size();
+        return gaps > newPositions.size() && gaps > COMPACT_THRESHOLD ? result.compacted() : result;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<String, GddlElement<?>>> entrySet()
+    {
+        return new AbstractSet<>()
+        {
+            @Override
+            public int size()
+            {
+                return positions.size();
+            }
+
+            @NotNull
+            @Override
+            public Iterator<Entry<String, GddlElement<?>>> iterator()
+            {
+                return new Iterator<>()
+                {
+                    private int next = skipGaps(0);
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return next < entries.size();
+                    }
+
+                    @Override
+                    public Entry<String, GddlElement<?>> next()
+                    {
+                        if (next >= entries.size())
+                            throw new NoSuchElementException();
+                        var entry = entries.get(next);
+                        next = skipGaps(next + 1);
+                        return entry;
+                    }
+                };
+            }
+        };
+    }
+    //endregion
+
+    //region Implementation
+    private static final int COMPACT_THRESHOLD = 8;
+
+    private final PersistentHashMap<String, Integer> positions;
+
+    /**
+     * The entries in insertion order, with null in the place of removed entries.
+     */
+    private final PersistentVector<Entry<String, GddlElement<?>>> entries;
+
+    private PersistentMap(PersistentHashMap<String, Integer> positions, PersistentVector<Entry<String, GddlElement<?>>> entries)
+    {
+        this.positions = positions;
+        this.entries = entries;
+    }
+
+    private PersistentMap compacted()
+    {
+        var result = EMPTY;
+        for (var entry : entrySet())
+        {
+            result = result.with(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    private int skipGaps(int index)
+    {
+        while (index < entries.size() && entries.get(index) == null)
+        {
+            index++;
+        }
+        return index;
+    }
+    //endregion
+}
@@ -0,0 +1,470 @@
+package dev.gigaherz.util.gddl2.structure;
+
+import java.util.*;
+
+/**
+ * Explicit-stack implementations of the operations that walk a whole tree of elements.
+ * The maps and lists being visited are kept in a stack on the heap instead of the call stack,
+ * so that documents can be nested to any depth without overflowing the thread's stack.
+ */
+final class TreeOperations
+{
+    //region API
+    /**
+     * Deep-copies an element, then resolves the references in the copy against the original,
+     * one level at a time, in the same order as copying each element recursively would.
+     * If shareFrozen is true, frozen elements are shared with the copy instead of being copied.
+     */
+    static GddlElement<?> copy(GddlElement<?> element, boolean shareFrozen)
+    {
+        if (shareFrozen && element.isFrozen())
+            return element;
+
+        if (!element.isCollection())
+        {
+            var c = element.copyInternal();
+            c.resolve(element);
+            return c;
+        }
+
+        var open = new ArrayDeque<CopyFrame>();
+        var current = new CopyFrame(element);
+        while (true)
+        {
+            if (current.cursor.hasNext())
+            {
+                var child = current.cursor.next();
+                if (shareFrozen && child.isFrozen())
+                {
+                    current.add(child);
+                    continue;
+                }
+                if (child.isCollection())
+                {
+                    open.push(current);
+                    current = new CopyFrame(child);
+                    continue;
+                }
+
+                var c = child.copyInternal();
+                c.resolve(child);
+                current.add(c);
+                if (c instanceof GddlReference r && !r.isResolved())
+                    current.unresolved.add(r);
+                continue;
+            }
+
+            // Once the copy is complete, references that could not be resolved yet are tried again from this level.
+            for (var r : current.unresolved)
+            {
+                r.resolve(current.cursor.element);
+            }
+            current.unresolved.removeIf(GddlElement::isResolved);
+
+            if (open.isEmpty())
+                return current.copy;
+
+            var finished = current;
+            current = open.pop();
+            current.add(finished.copy);
+            current.unresolved.addAll(finished.unresolved);
+        }
+    }
+
+    /**
+     * Freezes an element and every descendant that isn't frozen yet.
+     */
+    static void freeze(GddlElement<?> element)
+    {
+        element.freezeContents();
+        element.frozen = true;
+        element.setParent(null);
+        if (!element.isCollection())
+            return;
+
+        var open = new ArrayDeque<Cursor>();
+        var current = new Cursor(element);
+        while (true)
+        {
+            if (current.hasNext())
+            {
+                var child = current.next();
+                if (!child.isFrozen())
+                {
+                    child.freezeContents();
+                    child.frozen = true;
+                    child.setParent(null);
+                    if (child.isCollection())
+                    {
+                        open.push(current);
+                        current = new Cursor(child);
+                    }
+                }
+                continue;
+            }
+
+            if (open.isEmpty())
+                return;
+
+            current = open.pop();
+        }
+    }
+
+    /**
+     * Resolves every reference inside a map or list, in document order.
+     * Frozen subtrees may be shared with other trees, so they are left as they are.
+     */
+    static void resolve(GddlElement<?> collection, GddlElement<?> root)
+    {
+        var open = new ArrayDeque<Cursor>();
+        var current = new Cursor(collection);
+        while (true)
+        {
+            if (current.hasNext())
+            {
+                var child = current.next();
+                if (child.isFrozen())
+                    continue;
+                if (child.isCollection())
+                {
+                    open.push(current);
+                    current = new Cursor(child);
+                }
+                else
+                {
+                    child.resolve(root);
+                }
+                continue;
+            }
+
+            if (open.isEmpty())
+                return;
+
+            current = open.pop();
+        }
+    }
+
+    /**
+     * Replaces every resolved reference inside a map or list with a copy of its target, in document order.
+     * Frozen subtrees can't be modified, so they are left as they are.
+     */
+    static void simplify(GddlElement<?> collection)
+    {
+        var open = new ArrayDeque<Cursor>();
+        var current = new Cursor(collection);
+        while (true)
+        {
+            if (current.hasNext())
+            {
+                var child = current.next();
+                if (child.isFrozen())
+                    continue;
+                if (child.isCollection())
+                {
+                    open.push(current);
+                    current = new Cursor(child);
+                }
+                else
+                {
+                    var simplified = child.simplify();
+                    //noinspection NumberEquality
+                    if (simplified != child)
+                        current.replace(simplified);
+                }
+                continue;
+            }
+
+            if (open.isEmpty())
+                return;
+
+            current = open.pop();
+        }
+    }
+
+    /**
+     * Compares two elements of the same class, including all of their descendants.
+     */
+    static boolean equals(GddlElement<?> a, GddlElement<?> b)
+    {
+        var pending = new ArrayDeque<GddlElement<?>>();
+        pending.push(b);
+        pending.push(a);
+        while (!pending.isEmpty())
+        {
+            var x = pending.pop();
+            var y = pending.pop();
+
+            //noinspection NumberEquality
+            if (x == y)
+                continue;
+            if (x.getClass() != y.getClass())
+                return false;
+
+            if (x instanceof GddlList list)
+            {
+                var other = (GddlList) y;
+                if (list.size() != other.size() || list.structuralHashCode() != other.structuralHashCode())
+                    return false;
+                for (int i = list.size() - 1; i >= 0; i--)
+                {
+                    pending.push(other.get(i));
+                    pending.push(list.get(i));
+                }
+            }
+            else if (x instanceof GddlMap map)
+            {
+                var other = (GddlMap) y;
+                if (map.size() != other.size() || !Objects.equals(map.getTypeName(), other.getTypeName())
+                        || map.structuralHashCode() != other.structuralHashCode())
+                    return false;
+                for (var entry : map.entrySet())
+                {
+                    var value = other.get(entry.getKey());
+                    if (value == null)
+                        return false;
+                    pending.push(value);
+                    pending.push(entry.getValue());
+                }
+            }
+            else if (!x.equals(y))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The hash codes of a map or list, as cached by {@link GddlElement#cachedHashes()}.
+     *
+     * @param hash       The result of {@link GddlElement#hashCode()}
+     * @param structural The result of {@link GddlElement#structuralHashCode()}
+     */
+    record Hashes(int hash, int structural)
+    {
+    }
+
+    /**
+     * Returns the hash codes of a map or list, with the same results as combining the hash codes of its children recursively.
+     * Only the collections without cached hashes are visited, and their hashes are cached on the way back up.
+     * <p>
+     * Changes are reported up through {@link GddlElement#getParent()}, so a collection holding a mutable element
+     * whose parent is some other collection would never hear about them. The hashes of such a collection,
+     * and of those containing it, are returned but not cached.
+     */
+    static Hashes hashes(GddlElement<?> collection)
+    {
+        var cached = collection.cachedHashes();
+        if (cached != null)
+            return cached;
+
+        var open = new ArrayDeque<Cursor>();
+        var current = new Cursor(collection);
+        current.total = current.structuralTotal = initialHash(collection);
+        while (true)
+        {
+            if (current.hasNext())
+            {
+                var child = current.next();
+                if (!child.isFrozen() && child.getParent() != current.element)
+                    current.cacheable = false;
+                if (!child.isCollection())
+                {
+                    addHash(current, child.hashCode(), child.structuralHashCode());
+                    continue;
+                }
+
+                var childHashes = child.cachedHashes();
+                if (childHashes == null)
+                {
+                    open.push(current);
+                    current = new Cursor(child);
+                    current.total = current.structuralTotal = initialHash(child);
+                    continue;
+                }
+
+                addHash(current, childHashes.hash(), childHashes.structural());
+                continue;
+            }
+
+            var hashes = finalHashes(current);
+            if (current.cacheable)
+                current.element.setCachedHashes(hashes);
+            if (open.isEmpty())
+                return hashes;
+
+            var cacheable = current.cacheable;
+            current = open.pop();
+            current.cacheable &= cacheable;
+            addHash(current, hashes.hash(), hashes.structural());
+        }
+    }
+
+    /**
+     * Computes the formatting complexity of a map or list, which counts its descendants, with map entries weighing more.
+     */
+    static int formattingComplexity(GddlElement<?> collection)
+    {
+        var open = new ArrayDeque<Cursor>();
+        var current = new Cursor(collection);
+        while (true)
+        {
+            if (current.hasNext())
+            {
+                var child = current.next();
+                if (child.isCollection())
+                {
+                    open.push(current);
+                    current = new Cursor(child);
+                    continue;
+                }
+
+                addComplexity(current, child.getFormattingComplexity());
+                continue;
+            }
+
+            int complexity = 2 + current.total;
+            if (open.isEmpty())
+                return complexity;
+
+            current = open.pop();
+            addComplexity(current, complexity);
+        }
+    }
+    //endregion
+
+    //region Implementation
+    private TreeOperations()
+    {
+    }
+
+    private static int initialHash(GddlElement<?> collection)
+    {
+        // Lists start from the hash of an empty List, maps from the hash of an empty Map.
+        return collection.isMap() ? 0 : 1;
+    }
+
+    private static void addHash(Cursor cursor, int childHash, int childStructuralHash)
+    {
+        if (cursor.element.isMap())
+        {
+            int keyHash = Objects.hashCode(cursor.key);
+            cursor.total += keyHash ^ childHash;
+            cursor.structuralTotal += keyHash ^ childStructuralHash;
+        }
+        else
+        {
+            cursor.total = 31 * cursor.total + childHash;
+            cursor.structuralTotal = 31 * cursor.structuralTotal + childStructuralHash;
+        }
+    }
+
+    private static Hashes finalHashes(Cursor cursor)
+    {
+        var element = cursor.element;
+        if (element instanceof GddlMap map)
+            return new Hashes(Objects.hash(element.baseHashCode(), cursor.total, map.getTypeName()),
+                    31 * cursor.structuralTotal + Objects.hashCode(map.getTypeName()));
+        return new Hashes(Objects.hash(element.baseHashCode(), cursor.total), cursor.structuralTotal);
+    }
+
+    private static void addComplexity(Cursor cursor, int childComplexity)
+    {
+        cursor.total += cursor.element.isMap() ? 3 * childComplexity : childComplexity;
+    }
+
+    /**
+     * Position within the children of a map or list.
+     */
+    private static final class Cursor
+    {
+        final GddlElement<?> element;
+        private final GddlList items;
+        private final Iterator<Map.Entry<String, GddlElement<?>>> entries;
+        private int index;
+
+        /**
+         * The key of the child last returned by {@link #next()}, if the element is a map.
+         */
+        String key;
+
+        /**
+         * Running total for operations that combine values computed from the children.
+         */
+        int total;
+
+        /**
+         * Running total of the structural hash codes of the children, computed alongside {@link #total}.
+         */
+        int structuralTotal;
+
+        /**
+         * False if a change somewhere below this element might not discard the hashes cached for it.
+         */
+        boolean cacheable = true;
+
+        Cursor(GddlElement<?> element)
+        {
+            this.element = element;
+            if (element instanceof GddlMap map)
+            {
+                this.items = null;
+                this.entries = map.entrySet().iterator();
+            }
+            else
+            {
+                this.items = element.asList();
+                this.entries = null;
+            }
+        }
+
+        boolean hasNext()
+        {
+            return entries != null ? entries.hasNext() : index < items.size();
+        }
+
+        GddlElement<?> next()
+        {
+            if (entries != null)
+            {
+                var entry = entries.next();
+                key = entry.getKey();
+                return entry.getValue();
+            }
+            return items.get(index++);
+        }
+
+        /**
+         * Replaces the child last returned by {@link #next()}.
+         */
+        void replace(GddlElement<?> child)
+        {
+            if (entries != null)
+                element.asMap().put(key, child);
+            else
+                items.set(index - 1, child);
+        }
+    }
+
+    private static final class CopyFrame
+    {
+        final Cursor cursor;
+        final GddlElement<?> copy;
+        final List<GddlReference> unresolved = new ArrayList<>();
+
+        CopyFrame(GddlElement<?> original)
+        {
+            this.cursor = new Cursor(original);
+            this.copy = original.copyInternal();
+        }
+
+        void add(GddlElement<?> child)
+        {
+            if (copy instanceof GddlMap map)
+                map.put(cursor.key, child);
+            else
+                copy.asList().add(child);
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,143 @@
+package dev.gigaherz.util.gddl2.tests;
+
+import dev.gigaherz.util.gddl2.GDDL;
+import dev.gigaherz.util.gddl2.exceptions.ParserException;
+import dev.gigaherz.util.gddl2.parsing.GddlEventHandler;
+import dev.gigaherz.util.gddl2.queries.Query;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EventParserTest
+{
+    @Test
+    public void reportsValues() throws ParserException, IOException
+    {
+        assertEquals(List.of("start", "value 1", "end"), events("1"));
+        assertEquals(List.of("start", "value -0.5", "end"), events("-.5"));
+        assertEquals(List.of("start", "value 255", "end"), events("0xFF"));
+        assertEquals(List.of("start", "value a\nb", "end"), events("'a\\nb'"));
+        assertEquals(List.of("start", "value true", "end"), events("true"));
+        assertEquals(List.of("start", "null", "end"), events("nil"));
+    }
+
+    @Test
+    public void reportsStructure() throws ParserException, IOException
+    {
+        assertEquals(List.of(
+                "start",
+                "startMap null",
+                "key a", "value 1",
+                "key b", "startList", "value 2", "startMap obj", "endMap", "value x", "endList",
+                "key true", "null",
+                "endMap",
+                "end"
+        ), events("{a=1, 'b'=[2, obj{} 'x'], true: null}"));
+    }
+
+    @Test
+    public void reportsReferences() throws ParserException, IOException
+    {
+        assertEquals(List.of("start", "startList", "reference " + new Query().absolute().byKey("a").byKey("b"), "reference " + new Query().byKey("c"), "endList", "end"),
+                events("[/a/b, c]"));
+    }
+
+    @Test
+    public void rejectsInvalidDocuments()
+    {
+        assertThrows(ParserException.class, () -> events("{a=1"));
+        assertThrows(ParserException.class, () -> events("[1 2]"));
+        assertThrows(ParserException.class, () -> events("1 2"));
+    }
+
+    private static List<String> events(String text) throws ParserException, IOException
+    {
+        List<String> events = new ArrayList<>();
+        GDDL.parseEvents(text, "TEST", new GddlEventHandler()
+        {
+            @Override
+            public void startDocument()
+            {
+                events.add("start");
+            }
+
+            @Override
+            public void endDocument()
+            {
+                events.add("end");
+            }
+
+            @Override
+            public void startMap(String typeName)
+            {
+                events.add("startMap " + typeName);
+            }
+
+            @Override
+            public void key(String name)
+            {
+                events.add("key " + name);
+            }
+
+            @Override
+            public void endMap()
+            {
+                events.add("endMap");
+            }
+
+            @Override
+            public void startList()
+            {
+                events.add("startList");
+            }
+
+            @Override
+            public void endList()
+            {
+                events.add("endList");
+            }
+
+            @Override
+            public void nullValue()
+            {
+                events.add("null");
+            }
+
+            @Override
+            public void value(boolean value)
+            {
+                events.add("value " + value);
+            }
+
+            @Override
+            public void value(long value)
+            {
+                events.add("value " + value);
+            }
+
+            @Override
+            public void value(double value)
+            {
+                events.add("value " + value);
+            }
+
+            @Override
+            public void value(String value)
+            {
+                events.add("value " + value);
+            }
+
+            @Override
+            public void reference(Query query)
+            {
+                events.add("reference " + query);
+            }
+        });
+        return events;
+    }
+}
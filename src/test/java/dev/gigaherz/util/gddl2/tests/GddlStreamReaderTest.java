@@ -0,0 +1,110 @@
+package dev.gigaherz.util.gddl2.tests;
+
+import dev.gigaherz.util.gddl2.GDDL;
+import dev.gigaherz.util.gddl2.exceptions.ParserException;
+import dev.gigaherz.util.gddl2.parsing.GddlStreamReader;
+import dev.gigaherz.util.gddl2.parsing.StreamEvent;
+import dev.gigaherz.util.gddl2.queries.Query;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GddlStreamReaderTest
+{
+    @Test
+    public void readsScalarRoot() throws ParserException, IOException
+    {
+        var reader = GDDL.openStream("0x10", "TEST");
+        assertEquals(StreamEvent.INTEGER, reader.next());
+        assertEquals(16, reader.longValue());
+        assertNull(reader.currentKey());
+        assertEquals(StreamEvent.END_DOCUMENT, reader.next());
+        assertFalse(reader.hasNext());
+        assertThrows(IllegalStateException.class, reader::next);
+    }
+
+    @Test
+    public void readsNestedStructure() throws ParserException, IOException
+    {
+        var reader = GDDL.openStream("typed { a = 1.5, b: [ 'x', null, /a ] c = {} }", "TEST");
+
+        assertEquals(StreamEvent.START_MAP, reader.next());
+        assertEquals("typed", reader.typeName());
+        assertEquals(1, reader.depth());
+
+        assertEquals(StreamEvent.DECIMAL, reader.next());
+        assertEquals("a", reader.currentKey());
+        assertEquals(1.5, reader.doubleValue());
+
+        assertEquals(StreamEvent.START_LIST, reader.next());
+        assertEquals("b", reader.currentKey());
+
+        assertEquals(StreamEvent.STRING, reader.next());
+        assertNull(reader.currentKey());
+        assertEquals("x", reader.stringValue());
+
+        assertEquals(StreamEvent.NULL, reader.next());
+
+        assertEquals(StreamEvent.REFERENCE, reader.next());
+        assertEquals(new Query().absolute().byKey("a"), reader.referenceValue());
+
+        assertEquals(StreamEvent.END_LIST, reader.next());
+        assertEquals("b", reader.currentKey());
+
+        assertEquals(StreamEvent.START_MAP, reader.next());
+        assertEquals("c", reader.currentKey());
+        assertNull(reader.typeName());
+        assertEquals(StreamEvent.END_MAP, reader.next());
+
+        assertEquals(StreamEvent.END_MAP, reader.next());
+        assertEquals(0, reader.depth());
+        assertEquals(StreamEvent.END_DOCUMENT, reader.next());
+    }
+
+    @Test
+    public void skipsChildren() throws ParserException, IOException
+    {
+        var reader = GDDL.openStream("{ big = [1, {x=[2, 3]}, [[]]], after = true }", "TEST");
+
+        assertEquals(StreamEvent.START_MAP, reader.next());
+        assertEquals(StreamEvent.START_LIST, reader.next());
+        reader.skipChildren();
+        assertEquals(StreamEvent.END_LIST, reader.getEvent());
+        assertEquals("big", reader.currentKey());
+
+        assertEquals(StreamEvent.BOOLEAN, reader.next());
+        assertEquals("after", reader.currentKey());
+        assertTrue(reader.booleanValue());
+
+        assertEquals(StreamEvent.END_MAP, reader.next());
+        assertEquals(StreamEvent.END_DOCUMENT, reader.next());
+    }
+
+    @Test
+    public void rejectsWrongAccessors() throws ParserException, IOException
+    {
+        GddlStreamReader reader = GDDL.openStream("'text'", "TEST");
+        assertEquals(StreamEvent.STRING, reader.next());
+        assertThrows(IllegalStateException.class, reader::longValue);
+        assertThrows(IllegalStateException.class, reader::skipChildren);
+    }
+
+    @Test
+    public void rejectsInvalidDocuments()
+    {
+        assertThrows(ParserException.class, () -> readAll("{a=1 b}"));
+        assertThrows(ParserException.class, () -> readAll("[1 2]"));
+        assertThrows(ParserException.class, () -> readAll("[1] 2"));
+    }
+
+    private static void readAll(String text) throws ParserException, IOException
+    {
+        var reader = GDDL.openStream(text, "TEST");
+        while (reader.hasNext())
+        {
+            reader.next();
+        }
+    }
+}
@@ -7,7 +7,7 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.io.StringReader;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class LexerTest
 {
@@ -95,6 +95,87 @@ public class LexerTest
         assertEquals(tokenNil(), lexSingle("nil"));
     }
 
+    @Test
+    public void computesIntegerValues() throws LexerException, IOException
+    {
+        assertEquals(123, lexSingle("123").longValue());
+        assertEquals(-45, lexSingle("-45").longValue());
+        assertEquals(0x1F, lexSingle("0x1F").longValue());
+        assertEquals(-0x10, lexSingle("-0x10").longValue());
+        assertEquals(Long.MAX_VALUE, lexSingle("9223372036854775807").longValue());
+        assertEquals(Long.MIN_VALUE, lexSingle("-9223372036854775808").longValue());
+        assertTrue(lexSingle("123").hasValue());
+    }
+
+    @Test
+    public void computesDecimalValues() throws LexerException, IOException
+    {
+        String[] inputs = {
+                "1.5", "-0.0", "0.1", ".25", "3e10", "1.7976931348623157e308", "4.9e-324",
+                "123456789.987654321", "2.2250738585072014E-308", "1e23", "8.41e21", "9007199254740993.0"
+        };
+        for (String input : inputs)
+        {
+            assertEquals(Double.parseDouble(input), lexSingle(input).doubleValue(), input);
+        }
+        assertTrue(Double.isNaN(lexSingle(".NaN").doubleValue()));
+        assertEquals(Double.NEGATIVE_INFINITY, lexSingle("-.Inf").doubleValue());
+    }
+
+    @Test
+    public void keepsNumberTextWhenDroppingTrivia() throws LexerException, IOException
+    {
+        Lexer lexer = new Lexer(makeReader("[1.50, 0x1f]"), WhitespaceMode.DROP_ALL);
+        lexer.pop();
+        assertEquals(1.5, lexer.pop().doubleValue());
+        lexer.pop();
+        assertEquals(31, lexer.pop().longValue());
+    }
+
+    @Test
+    public void computesStringValues() throws LexerException, IOException
+    {
+        assertEquals("plain text", lexSingle("\"plain text\"").stringValue());
+        assertEquals("", lexSingle("''").stringValue());
+        assertEquals("a\tb\"c", lexSingle("'a\\tb\\\"c'").stringValue());
+
+        Lexer lexer = new Lexer(new Reader("['one', \"two\\n\"]", "TEST"));
+        lexer.pop();
+        assertEquals("one", lexer.pop().stringValue());
+        lexer.pop();
+        assertEquals("two\n", lexer.pop().stringValue());
+    }
+
+    @Test
+    public void skipsNestedElements() throws LexerException, IOException
+    {
+        Lexer lexer = new Lexer(makeReader("[ { a = ']', b = [1, \"\\\"}\"] } # ] }\n ], 5"));
+        assertEquals(TokenType.L_BRACKET, lexer.pop().type);
+        lexer.skipNested();
+        assertEquals(TokenType.COMMA, lexer.pop().type);
+        assertEquals(5, lexer.pop().longValue());
+        assertThrows(LexerException.class, () -> new Lexer(makeReader("{ a = [")).skipNested());
+    }
+
+    @Test
+    public void lexesKeywordsIgnoringCase() throws LexerException, IOException
+    {
+        assertEquals(token(TokenType.TRUE, "TRUE"), lexSingle("TRUE"));
+        assertEquals(token(TokenType.NULL, "Null"), lexSingle("Null"));
+        assertEquals(token(TokenType.DECIMAL, "deCimal"), lexSingle("deCimal"));
+        assertEquals(tokenIdentifier("trueish"), lexSingle("trueish"));
+        assertEquals(tokenIdentifier("nil_"), lexSingle("nil_"));
+        assertEquals(tokenIdentifier("tru3"), lexSingle("tru3"));
+    }
+
+    @Test
+    public void keywordsAreIdentifiers() throws LexerException, IOException
+    {
+        assertTrue(lexSingle("false").is(TokenType.IDENTIFIER));
+        assertTrue(lexSingle("integer").is(TokenType.IDENTIFIER));
+        assertFalse(lexSingle("'false'").is(TokenType.IDENTIFIER));
+    }
+
     @Test
     public void lexesSymbols() throws LexerException, IOException
     {
@@ -123,12 +204,48 @@ public class LexerTest
         assertEquals(expected.comment, actual.comment);
     }
 
+    @Test
+    public void dropsCommentsAndWhitespace() throws LexerException, IOException
+    {
+        Lexer lexer = new Lexer(makeReader("#this is a comment\n  {"), WhitespaceMode.DROP_ALL);
+        Token actual = lexer.pop();
+        assertEquals(tokenLBrace(), actual);
+        assertEquals("", actual.comment);
+        assertEquals("", actual.whitespace);
+    }
+
+    @Test
+    public void preservesOnlyComments() throws LexerException, IOException
+    {
+        Lexer lexer = new Lexer(makeReader("#this is a comment\n  {"), WhitespaceMode.PRESERVE_COMMENTS);
+        Token actual = lexer.pop();
+        assertEquals(tokenLBrace(), actual);
+        assertEquals("this is a comment\n", actual.comment);
+        assertEquals("", actual.whitespace);
+    }
+
     @Test
     public void ignoresWhitespace() throws LexerException, IOException
     {
         assertEquals(tokenLBrace(), lexSingle(" \t\n{ \t\n"));
     }
 
+    @Test
+    public void lexesFromInMemoryText() throws LexerException, IOException
+    {
+        Lexer lexer = new Lexer(new Reader("{a='b', c=1.5}", "TEST"));
+        assertEquals(tokenLBrace(), lexer.pop());
+        assertEquals(token(TokenType.IDENTIFIER, "a", new ParsingContext("TEST", 1, 2)), lexer.pop());
+        assertEquals(token(TokenType.EQUAL_SIGN, "=", new ParsingContext("TEST", 1, 3)), lexer.pop());
+        assertEquals(token(TokenType.STRING_LITERAL, "'b'", new ParsingContext("TEST", 1, 4)), lexer.pop());
+        assertEquals(token(TokenType.COMMA, ",", new ParsingContext("TEST", 1, 7)), lexer.pop());
+        assertEquals(token(TokenType.IDENTIFIER, "c", new ParsingContext("TEST", 1, 8)), lexer.pop());
+        assertEquals(token(TokenType.EQUAL_SIGN, "=", new ParsingContext("TEST", 1, 10)), lexer.pop());
+        assertEquals(token(TokenType.DECIMAL_LITERAL, "1.5", new ParsingContext("TEST", 1, 11)), lexer.pop());
+        assertEquals(token(TokenType.R_BRACE, "}", new ParsingContext("TEST", 1, 14)), lexer.pop());
+        assertEquals(TokenType.END, lexer.peek());
+    }
+
     // HARNESS BELOW
     // -------------
 
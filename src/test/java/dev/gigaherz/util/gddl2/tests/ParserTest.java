@@ -1,18 +1,24 @@
 package dev.gigaherz.util.gddl2.tests;
 
 import com.google.common.collect.ImmutableList;
+import dev.gigaherz.util.gddl2.GDDL;
 import dev.gigaherz.util.gddl2.exceptions.LexerException;
 import dev.gigaherz.util.gddl2.exceptions.ParserException;
+import dev.gigaherz.util.gddl2.formatting.Formatter;
 import dev.gigaherz.util.gddl2.parsing.*;
 import dev.gigaherz.util.gddl2.queries.Query;
 import dev.gigaherz.util.gddl2.structure.*;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class ParserTest
 {
@@ -523,7 +529,7 @@ public class ParserTest
         {
             if (closed)
                 throw new IllegalStateException("The TokenProvider is closed.");
-            return preparedTokens.get(Math.min(current, preparedTokens.size() - 1)).context;
+            return preparedTokens.get(Math.min(current, preparedTokens.size() - 1)).getParsingContext();
         }
 
         @Override
@@ -534,4 +540,231 @@ public class ParserTest
             closed = true;
         }
     }
+
+    @Test
+    public void deferredParsingLoadsOnAccess() throws ParserException, IOException
+    {
+        var text = "{ a = { b = [1, 2, { c = 'x' }] }, d = typed { e = 1.5 } # trailing\n }";
+        var full = GDDL.fromString(text).getRoot().asMap();
+        var deferred = GDDL.fromCharSequenceDeferred(text, "TEST").getRoot().asMap();
+
+        var a = deferred.getMap("a");
+        assertTrue(a.isDeferred());
+        assertEquals(1, a.size());
+        assertFalse(a.isDeferred());
+        assertEquals(a, a.getList("b").get(2).getParent().getParent());
+        assertEquals("typed", deferred.getMap("d").getTypeName());
+        assertEquals(full, deferred);
+    }
+
+    @Test
+    public void deferredParsingReportsErrorsOnAccess() throws ParserException, IOException
+    {
+        var deferred = GDDL.fromCharSequenceDeferred("[ { a = } ]", "TEST").getRoot().asList();
+        assertThrows(IllegalStateException.class, () -> deferred.get(0).asMap().size());
+    }
+
+    @Test
+    public void deferredParsingLoadsOnceAcrossThreads() throws Exception
+    {
+        var deferred = GDDL.fromCharSequenceDeferred("[ [1, 2, 3] ]", "TEST").getRoot().asList();
+        var nested = deferred.get(0).asList();
+        var threads = new Thread[8];
+        var sizes = new int[threads.length];
+        for (int i = 0; i < threads.length; i++)
+        {
+            int index = i;
+            threads[i] = new Thread(() -> sizes[index] = nested.size());
+            threads[i].start();
+        }
+        for (var thread : threads)
+        {
+            thread.join();
+        }
+        for (var size : sizes)
+        {
+            assertEquals(3, size);
+        }
+    }
+
+    @Test
+    public void parallelParsingMatchesSequentialParsing() throws ParserException, IOException
+    {
+        var builder = new StringBuilder("# root\n[\n");
+        for (int i = 0; i < 1000; i++)
+        {
+            switch (i % 5)
+            {
+                case 0 -> builder.append(i).append(",\n");
+                case 1 -> builder.append("'a, [b' # c, ]\n,");
+                case 2 -> builder.append("{ x = [1, 2], y = \"}\" }\n");
+                case 3 -> builder.append("typed { z = 1.5 },");
+                default -> builder.append("/a/b,");
+            }
+        }
+        builder.append("# trailing\n] # dangling");
+        var text = builder.toString();
+
+        var sequential = GDDL.fromString(text);
+        var parallel = GDDL.fromCharSequenceParallel(text, "TEST");
+        assertEquals(sequential, parallel);
+        assertEquals(sequential.getDanglingComment(), parallel.getDanglingComment());
+        assertEquals(sequential.getRoot().asList().getTrailingComment(), parallel.getRoot().asList().getTrailingComment());
+
+        var root = parallel.getRoot().asList();
+        assertEquals(1000, root.size());
+        for (var item : root)
+        {
+            assertSame(root, item.getParent());
+        }
+    }
+
+    @Test
+    public void parallelParsingKeepsMapOrder() throws ParserException, IOException
+    {
+        var builder = new StringBuilder("typed {");
+        for (int i = 0; i < 1000; i++)
+        {
+            builder.append("k").append(i).append(" = ").append(i).append(", ");
+        }
+        builder.append("}");
+        var text = builder.toString();
+
+        var sequential = GDDL.fromString(text).getRoot().asMap();
+        var parallel = GDDL.fromCharSequenceParallel(text, "TEST").getRoot().asMap();
+        assertEquals(sequential, parallel);
+        assertEquals("typed", parallel.getTypeName());
+        assertEquals(List.copyOf(sequential.keySet()), List.copyOf(parallel.keySet()));
+    }
+
+    @Test
+    public void parallelParsingReportsErrors()
+    {
+        var missing = "[" + "1, ".repeat(500) + ", 2]";
+        assertThrows(ParserException.class, () -> GDDL.fromCharSequenceParallel(missing, "TEST"));
+
+        var mismatched = "[" + "1, ".repeat(500) + "2}";
+        assertThrows(ParserException.class, () -> GDDL.fromCharSequenceParallel(mismatched, "TEST"));
+
+        var unclosed = "[" + "1, ".repeat(500);
+        assertThrows(ParserException.class, () -> GDDL.fromCharSequenceParallel(unclosed, "TEST"));
+
+        var extra = "[" + "1, ".repeat(500) + "] 2";
+        assertThrows(ParserException.class, () -> GDDL.fromCharSequenceParallel(extra, "TEST"));
+    }
+
+    @Test
+    public void handlesDeeplyNestedDocuments() throws ParserException, IOException
+    {
+        int depth = 50000;
+        var text = "[{a=".repeat(depth) + "1" + "}]".repeat(depth);
+
+        var root = GDDL.fromString(text).getRoot();
+        var copy = root.copy();
+        assertEquals(root, copy);
+        assertEquals(root.hashCode(), copy.hashCode());
+        assertEquals(text, Formatter.formatCompact(copy));
+
+        GddlElement<?> innermost = copy;
+        for (int i = 0; i < depth; i++)
+        {
+            innermost = innermost.asList().get(0).asMap().get("a");
+        }
+        assertEquals(GddlValue.of(1), innermost);
+    }
+
+    @Test
+    public void reusableParserStartsOverForEachDocument() throws ParserException, IOException
+    {
+        var parser = new GddlParser();
+
+        var first = parser.parse("{ a = [1, 2, 3] } #dangling", "FIRST");
+        assertEquals(GDDL.fromString("{ a = [1, 2, 3] } #dangling"), first);
+        assertEquals("dangling", first.getDanglingComment());
+
+        var error = assertThrows(ParserException.class, () -> parser.parse("[1,\n2 3]", "BROKEN"));
+        assertTrue(error.getMessage().contains("BROKEN"));
+
+        var second = parser.parse("typed { x = 'a' }", "SECOND");
+        assertEquals(GDDL.fromString("typed { x = 'a' }"), second);
+        assertEquals(GDDL.fromString("typed { x = 'a' }").getDanglingComment(), second.getDanglingComment());
+
+        var third = parser.parse("1", "THIRD");
+        assertEquals(GddlValue.of(1), third.getRoot());
+    }
+
+    @Test
+    public void sharedParserWorksAcrossThreads() throws Exception
+    {
+        var threads = new Thread[4];
+        var failures = new java.util.concurrent.ConcurrentLinkedQueue<Throwable>();
+        for (int t = 0; t < threads.length; t++)
+        {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                try
+                {
+                    for (int i = 0; i < 200; i++)
+                    {
+                        var text = "{ a = " + (seed * 1000 + i) + ", b = [" + i + ", 'x'] }";
+                        assertEquals(GDDL.fromString(text), GDDL.fromCharSequenceShared(text, "TEST"));
+                    }
+                }
+                catch (Throwable e)
+                {
+                    failures.add(e);
+                }
+            });
+            threads[t].start();
+        }
+        for (var thread : threads)
+        {
+            thread.join();
+        }
+        assertTrue(failures.isEmpty(), failures.toString());
+    }
+
+    @Test
+    public void loadsManyFilesConcurrently() throws Exception
+    {
+        var directory = Files.createTempDirectory("batch");
+        var files = new ArrayList<Path>();
+        try
+        {
+            Files.createDirectory(directory.resolve("nested"));
+            for (int i = 0; i < 50; i++)
+            {
+                var file = directory.resolve(i % 2 == 0 ? "f" + i + ".gddl" : "nested/f" + i + ".gddl");
+                Files.writeString(file, i == 7 ? "{ broken = }" : "{ index = " + i + " }");
+                files.add(file);
+            }
+            var ignored = directory.resolve("readme.txt");
+            Files.writeString(ignored, "not a document");
+            files.add(ignored);
+
+            var missing = directory.resolve("missing.gddl");
+            var all = new ArrayList<>(files.subList(0, 50));
+            all.add(missing);
+            var result = GDDL.loadAll(all, StandardCharsets.UTF_8, 4);
+            assertEquals(49, result.documents().size());
+            assertEquals(List.of(files.get(7), missing), List.copyOf(result.errors().keySet()));
+            assertTrue(result.errors().get(files.get(7)) instanceof ParserException);
+            assertTrue(result.errors().get(missing) instanceof IOException);
+            assertEquals(GddlValue.of(3), result.get(files.get(3)).getRoot().asMap().get("index"));
+
+            var walked = GDDL.loadDirectory(directory, "*.gddl");
+            assertEquals(49, walked.documents().size());
+            assertEquals(Set.of(files.get(7)), walked.errors().keySet());
+            assertNull(walked.get(ignored));
+        }
+        finally
+        {
+            for (var file : files)
+            {
+                Files.delete(file);
+            }
+            Files.delete(directory.resolve("nested"));
+            Files.delete(directory);
+        }
+    }
 }
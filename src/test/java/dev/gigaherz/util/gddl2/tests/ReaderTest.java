@@ -100,4 +100,86 @@ public class ReaderTest
         assertEquals("1234", reader.read(4));
         assertEquals(-1, reader.peek());
     }
+
+    @Test
+    public void readsAcrossBufferBoundaries() throws IOException, ReaderException
+    {
+        String testString = "0123456789abcdef".repeat(2048);
+        Reader reader = new Reader(new StringReader(testString), SOURCE_NAME);
+        assertEquals(testString.charAt(20000), reader.peek(20000));
+        assertEquals(testString.substring(0, 10000), reader.read(10000));
+        assertEquals(testString.substring(10000, 30000), reader.read(20000));
+        assertEquals(testString.substring(30000), reader.read(testString.length() - 30000));
+        assertEquals(-1, reader.peek());
+        assertEquals(-1, reader.peek(10));
+    }
+
+    @Test
+    public void readsFromCharSequence() throws IOException, ReaderException
+    {
+        Reader reader = new Reader("qwerty\nuiop", SOURCE_NAME);
+        assertEquals('q', reader.peek());
+        assertEquals("qwe", reader.read(3));
+        assertEquals(3, reader.getOffset());
+        assertEquals("erty", reader.slice(2, 6));
+        assertEquals("rty\nu", reader.read(5));
+        assertEquals(new ParsingContext(SOURCE_NAME, 2, 2), reader.getParsingContext());
+        assertEquals("iop", reader.read(3));
+        assertEquals(-1, reader.peek());
+    }
+
+    @Test
+    public void readsFromCharArray() throws IOException, ReaderException
+    {
+        Reader reader = new Reader("zxcvbnm".toCharArray(), SOURCE_NAME);
+        assertEquals("zxc", reader.read(3));
+        assertEquals('v', reader.peek());
+        assertEquals("zxcvbnm", reader.slice(0, 7));
+        reader.skip(4);
+        assertEquals(-1, reader.peek());
+    }
+
+    @Test
+    public void keepsTrackOfLocationAcrossBufferBoundaries() throws IOException, ReaderException
+    {
+        String line = "0123456789".repeat(9) + "\r\n";
+        Reader reader = new Reader(new StringReader(line.repeat(500)), SOURCE_NAME);
+        reader.skip(line.length() * 300 + 5);
+        assertEquals(new ParsingContext(SOURCE_NAME, 301, 6), reader.getParsingContext());
+        assertEquals(new ParsingContext(SOURCE_NAME, 3, 1), reader.getParsingContext(line.length() * 2));
+        assertEquals(new ParsingContext(SOURCE_NAME, 1, 91), reader.getParsingContext(90));
+    }
+
+    @Test
+    public void keepsTrackOfLocationWhenTheWindowMoves() throws IOException, ReaderException
+    {
+        var sb = new StringBuilder();
+        for (int i = 0; i < 3000; i++)
+        {
+            sb.append(i).append('\n');
+        }
+        String text = sb.toString();
+        Reader reader = new Reader(new StringReader(text), SOURCE_NAME);
+
+        // Looking far ahead after reading partway makes the refill move the unread part of the window to its start.
+        int offset = 5000;
+        reader.skip(offset);
+        reader.peek(4000);
+        assertEquals(expectedContext(text, offset), reader.getParsingContext());
+    }
+
+    private static ParsingContext expectedContext(String text, int offset)
+    {
+        int line = 1;
+        int lineStart = 0;
+        for (int i = 0; i < offset; i++)
+        {
+            if (text.charAt(i) == '\n')
+            {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        return new ParsingContext(SOURCE_NAME, line, offset - lineStart + 1);
+    }
 }
@@ -11,8 +11,10 @@ import org.junit.jupiter.api.Test;
 
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 @SuppressWarnings("SameParameterValue")
@@ -54,6 +56,35 @@ public class DynamicOpsTest
         assertRoundTrip(expected, Codec.unboundedMap(Codec.STRING, Codec.STRING), Map.of("a", "1", "b", "2", "c", "3"));
     }
 
+    @Test
+    public void testPersistentOps()
+    {
+        var values = IntStream.range(0, 100).boxed().toList();
+        var expected = GddlList.empty();
+        values.forEach(i -> expected.add(GddlValue.of(i)));
+
+        var result = Codec.list(Codec.INT).encodeStart(GDDLOps.PERSISTENT, values).result().orElseThrow();
+        assertTrue(result.isFrozen());
+        assertEquals(expected, result);
+        assertEquals(values, Codec.list(Codec.INT).parse(GDDLOps.PERSISTENT, result).result().orElseThrow());
+    }
+
+    @Test
+    public void testBuildersLeavePrefixUntouched()
+    {
+        var ops = GDDLOps.INSTANCE;
+
+        var map = GddlMap.of("a", GddlValue.of(1));
+        var merged = ops.mapBuilder().add("b", ops.createInt(2)).build(map).result().orElseThrow();
+        assertEquals(GddlMap.of("a", GddlValue.of(1)), map);
+        assertEquals(GddlMap.of("a", GddlValue.of(1), "b", GddlValue.of(2)), merged);
+
+        var list = GddlList.of(GddlValue.of(1));
+        var appended = ops.listBuilder().add(ops.createInt(2)).build(list).result().orElseThrow();
+        assertEquals(GddlList.of(GddlValue.of(1)), list);
+        assertEquals(GddlList.of(GddlValue.of(1), GddlValue.of(2)), appended);
+    }
+
     private <T> void assertRoundTrip(GddlElement<?> expected, Codec<T> codec, T value)
     {
         var result = codec.encodeStart(GDDLOps.INSTANCE, value);
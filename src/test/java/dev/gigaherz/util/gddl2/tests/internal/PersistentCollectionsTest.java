@@ -0,0 +1,117 @@
+package dev.gigaherz.util.gddl2.tests.internal;
+
+import dev.gigaherz.util.gddl2.internal.PersistentHashMap;
+import dev.gigaherz.util.gddl2.internal.PersistentVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentCollectionsTest
+{
+    @Test
+    public void vectorMatchesArrayList()
+    {
+        var random = new Random(1234);
+        PersistentVector<Integer> vector = PersistentVector.empty();
+        var expected = new ArrayList<Integer>();
+        var snapshots = new ArrayList<PersistentVector<Integer>>();
+        var snapshotContents = new ArrayList<List<Integer>>();
+        for (int step = 0; step < 20000; step++)
+        {
+            int op = random.nextInt(10);
+            if (op < 6 || expected.isEmpty())
+            {
+                vector = vector.append(step);
+                expected.add(step);
+            }
+            else if (op < 8)
+            {
+                int index = random.nextInt(expected.size());
+                vector = vector.with(index, -step);
+                expected.set(index, -step);
+            }
+            else if (op < 9)
+            {
+                vector = vector.withoutLast();
+                expected.remove(expected.size() - 1);
+            }
+            else if (expected.size() < 100)
+            {
+                int index = random.nextInt(expected.size());
+                vector = vector.without(index);
+                expected.remove(index);
+            }
+
+            if (step % 997 == 0)
+            {
+                snapshots.add(vector);
+                snapshotContents.add(List.copyOf(expected));
+            }
+        }
+        assertEquals(expected, vector);
+
+        // Older versions are not affected by later updates.
+        for (int i = 0; i < snapshots.size(); i++)
+        {
+            assertEquals(snapshotContents.get(i), snapshots.get(i));
+        }
+
+        while (!vector.isEmpty())
+        {
+            vector = vector.withoutLast();
+            expected.remove(expected.size() - 1);
+            if (expected.size() % 31 == 0)
+                assertEquals(expected, vector);
+        }
+    }
+
+    @Test
+    public void hashMapMatchesHashMap()
+    {
+        var random = new Random(4321);
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+        var expected = new HashMap<String, Integer>();
+        var snapshot = map;
+        var snapshotContents = new HashMap<String, Integer>();
+        for (int step = 0; step < 20000; step++)
+        {
+            // "Aa" and "BB" have the same hash code, so keys made of them collide.
+            var key = random.nextBoolean() ? "k" + random.nextInt(3000) : (random.nextBoolean() ? "Aa" : "BB") + random.nextInt(5);
+            if (random.nextInt(3) == 0)
+            {
+                map = map.without(key);
+                expected.remove(key);
+            }
+            else
+            {
+                map = map.with(key, step);
+                expected.put(key, step);
+            }
+            assertEquals(expected.size(), map.size());
+
+            if (step == 10000)
+            {
+                snapshot = map;
+                snapshotContents.putAll(expected);
+            }
+        }
+        for (var entry : expected.entrySet())
+        {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        for (int i = 0; i < 3000; i++)
+        {
+            assertEquals(expected.get("k" + i), map.get("k" + i));
+        }
+        for (var entry : snapshotContents.entrySet())
+        {
+            assertEquals(entry.getValue(), snapshot.get(entry.getKey()));
+        }
+        assertEquals(snapshotContents.size(), snapshot.size());
+    }
+}
@@ -0,0 +1,54 @@
+package dev.gigaherz.util.gddl2.tests.internal;
+
+import dev.gigaherz.util.gddl2.internal.Utf8BufferReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class Utf8BufferReaderTest
+{
+    private static final String MIXED = "{ key = \"café • 𐌼\" } # plain ascii comment that is long enough\n";
+
+    @Test
+    public void decodesMixedText() throws IOException
+    {
+        assertEquals(MIXED, readAll(MIXED, 4096));
+    }
+
+    @Test
+    public void decodesWithSmallReads() throws IOException
+    {
+        assertEquals(MIXED, readAll(MIXED, 1));
+        assertEquals(MIXED, readAll(MIXED, 3));
+    }
+
+    @Test
+    public void rejectsMalformedInput()
+    {
+        var reader = new Utf8BufferReader(ByteBuffer.wrap(new byte[]{'a', (byte) 0xC3, 'b'}));
+        char[] buffer = new char[8];
+        assertThrows(MalformedInputException.class, () -> reader.read(buffer, 0, buffer.length));
+
+        var truncated = new Utf8BufferReader(ByteBuffer.wrap(new byte[]{'a', (byte) 0xF0, (byte) 0x90}));
+        assertThrows(MalformedInputException.class, () -> truncated.read(buffer, 0, buffer.length));
+    }
+
+    private static String readAll(String text, int chunk) throws IOException
+    {
+        var reader = new Utf8BufferReader(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+        var sb = new StringBuilder();
+        char[] buffer = new char[chunk];
+        int count;
+        while ((count = reader.read(buffer, 0, chunk)) >= 0)
+        {
+            sb.append(buffer, 0, count);
+        }
+        return sb.toString();
+    }
+}
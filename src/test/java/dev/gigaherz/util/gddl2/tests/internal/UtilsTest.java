@@ -16,4 +16,13 @@ public class UtilsTest
         assertEquals("\r\n", Utility.unescapeString("'\\\r\n'"));
         assertEquals("\r\n", Utility.unescapeString("'\r\\\n'"));
     }
+
+    @Test
+    public void unescapeCopiesTextBetweenEscapes()
+    {
+        assertEquals("abc", Utility.unescapeString("\"abc\""));
+        assertEquals("a\"b'c\\d", Utility.unescapeString("\"a\\\"b'c\\\\d\""));
+        assertEquals("x\u00e9y\u0041z", Utility.unescapeString("'x\\u00e9y\\x41z'"));
+        assertEquals("end\0", Utility.unescapeString("'end\\0'"));
+    }
 }
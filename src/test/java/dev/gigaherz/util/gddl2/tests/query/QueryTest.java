@@ -1,15 +1,21 @@
 package dev.gigaherz.util.gddl2.tests.query;
 
+import dev.gigaherz.util.gddl2.GDDL;
+import dev.gigaherz.util.gddl2.exceptions.ParserException;
 import dev.gigaherz.util.gddl2.queries.Query;
+import dev.gigaherz.util.gddl2.queries.QueryBatch;
+import dev.gigaherz.util.gddl2.structure.GddlElement;
 import dev.gigaherz.util.gddl2.structure.GddlList;
 import dev.gigaherz.util.gddl2.structure.GddlMap;
 import dev.gigaherz.util.gddl2.structure.GddlValue;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.stream.Stream;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class QueryTest
 {
@@ -40,6 +46,16 @@ public class QueryTest
         assertThrows(IllegalArgumentException.class, () -> Query.fromString("/[-1]").apply(list).toList());
     }
 
+    @Test
+    public void querySelfReturnsElement()
+    {
+        var map = GddlMap.of(
+                "key1", GddlValue.of("Text")
+        );
+        assertEquals(List.of(GddlValue.of("Text")), Query.fromString("./key1").apply(map).toList());
+        assertEquals(List.of(map), Query.fromString(".").apply(map).toList());
+    }
+
     @Test
     public void queryListRangeReturnsRange()
     {
@@ -90,4 +106,120 @@ public class QueryTest
         assertEquals(List.of(GddlValue.of("Text")), Query.fromString("/[2]/key1").apply(list).toList());
         assertEquals(List.of(GddlValue.of(1)), Query.fromString("/[2]/key2").apply(list).toList());
     }
+
+    @Test
+    public void selectiveParsingFindsTheSameElements() throws ParserException, IOException
+    {
+        var text = """
+                {
+                    skipped = { a = [1, 2, { "]" = '}' }], # } ]
+                                b = 0x10 },
+                    other = /skipped/a,
+                    list = [ 'x', { inner = 1.5, unused = [] }, typed { v = true } ],
+                    wanted = 'yes'
+                }
+                """;
+        var full = GDDL.fromString(text).getRoot();
+        var queries = new Query[]{
+                Query.fromString("/wanted"),
+                Query.fromString("/list[1]/inner"),
+                Query.fromString("/list[^1]"),
+                Query.fromString("list/[0]/../[1]")
+        };
+
+        var file = Files.createTempFile("selective", ".gddl");
+        try
+        {
+            Files.writeString(file, text);
+            var partial = GDDL.fromFile(file, queries).getRoot();
+            for (var query : queries)
+            {
+                assertEquals(query.apply(full).toList(), query.apply(partial).toList());
+            }
+            assertFalse(partial.asMap().containsKey("skipped"));
+            assertEquals(3, partial.asMap().get("list").asList().size());
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void compiledQueriesAreSharedAndImmutable()
+    {
+        var query = Query.compile("/a/[1]");
+        assertSame(query, Query.compile("/a/[1]"));
+        assertEquals(Query.fromString("/a/[1]"), query);
+        assertTrue(query.isImmutable());
+        assertThrows(IllegalStateException.class, () -> query.byKey("b"));
+        assertThrows(IllegalStateException.class, () -> query.parent());
+
+        var extended = query.copy().byKey("b");
+        assertFalse(extended.isImmutable());
+        assertEquals(Query.fromString("/a/[1]/b"), extended);
+        assertEquals(2, query.pathComponents().size());
+        assertTrue(Query.compile("/a").copy().isAbsolute());
+        assertFalse(Query.compile("a").copy().isAbsolute());
+
+        var map = GddlMap.of("a", GddlList.of(GddlValue.of(1), GddlValue.of(2)));
+        assertEquals(List.of(GddlValue.of(2)), map.query("/a/[1]").toList());
+        assertEquals(List.of(GddlValue.of(2)), map.query("/a/[1]").toList());
+
+        for (int i = 0; i < 1000; i++)
+        {
+            assertEquals(Query.fromString("/k" + i), Query.compile("/k" + i));
+        }
+    }
+
+    @Test
+    public void queryPlansMatchComponentFilters() throws ParserException, IOException
+    {
+        var root = GDDL.fromString("""
+                {
+                    a = [ { b = 1 }, { b = 2, c = [3, 4, 5] }, [6], { b = 7 } ],
+                    d = { e = { f = 'x' } },
+                    g = []
+                }
+                """).getRoot();
+        var expressions = List.of("/a/[1]/b", "/a/[..]/b", "/a/[1..^1]", "/a/[^1]/b", "/a/[..]/c/[1..]",
+                "/d/e/f", "/d/e/../e/f", "/d/./e", "/d/x", "/a/b", "/d/[0]", "/g/[..]", "/a/[2]/..", "/a/[5..9]");
+        for (var expression : expressions)
+        {
+            var query = Query.fromString(expression);
+            var expected = Stream.<GddlElement<?>>of(root);
+            for (var component : query.pathComponents())
+            {
+                expected = component.filter(expected);
+            }
+            var expectedList = expected.toList();
+            assertEquals(expectedList, query.apply(root).toList(), expression);
+            assertEquals(expectedList.isEmpty() ? null : expectedList.get(0), query.findFirst(root), expression);
+        }
+        assertEquals(GddlValue.of("x"), root.queryFirst("/d/e/f"));
+        assertNull(root.queryFirst("/a/[..]/c/[5]"));
+    }
+
+    @Test
+    public void queryBatchMatchesIndividualQueries() throws ParserException, IOException
+    {
+        var root = GDDL.fromString("""
+                {
+                    a = [ { b = 1 }, { b = 2, c = [3, 4, 5] }, [6], { b = 7 } ],
+                    d = { e = { f = 'x' } }
+                }
+                """).getRoot();
+        var queries = List.of(Query.fromString("/a/[1]/b"), Query.fromString("/a/[..]/b"), Query.fromString("/a/[..]/c/[1..]"),
+                Query.fromString("/d/e/f"), Query.fromString("/d/./e/../e/f"), Query.fromString("/d/x"), Query.fromString("/a/[1]/b"),
+                Query.fromString("/a"));
+        var batch = QueryBatch.of(queries);
+        assertEquals(7, batch.queries().size());
+
+        var results = batch.apply(root);
+        assertEquals(batch.queries(), List.copyOf(results.keySet()));
+        for (var query : queries)
+        {
+            assertEquals(query.apply(root).toList(), results.get(query), query.toString());
+        }
+    }
 }
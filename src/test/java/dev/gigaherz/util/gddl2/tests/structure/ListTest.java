@@ -6,7 +6,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class ListTest
 {
@@ -83,4 +83,33 @@ public class ListTest
         assertEquals(1, list.size());
         assertEquals(second, list.get(0));
     }
+
+    @Test
+    public void frozenListsShareStructure()
+    {
+        GddlList list = GddlList.of(GddlValue.of(1), GddlValue.of(2)).freeze();
+        assertThrows(UnsupportedOperationException.class, () -> list.add(GddlValue.of(3)));
+        assertThrows(UnsupportedOperationException.class, () -> list.get(0).setComment("no"));
+
+        var updated = list;
+        for (int i = 3; i <= 100; i++)
+        {
+            updated = updated.withAdded(GddlValue.of(i));
+        }
+        assertEquals(2, list.size());
+        assertEquals(100, updated.size());
+        assertEquals(GddlValue.of(50), updated.get(49));
+        assertSame(list.get(0), updated.get(0));
+        assertNull(list.get(0).getParent());
+
+        var replaced = updated.withSet(10, GddlValue.of("x")).withRemoved(0);
+        assertEquals(99, replaced.size());
+        assertEquals(GddlValue.of("x"), replaced.get(9));
+        assertEquals(GddlValue.of(11), updated.get(10));
+
+        var mutable = replaced.mutableCopy();
+        mutable.add(GddlValue.of(true));
+        assertEquals(100, mutable.size());
+        assertEquals(replaced, replaced.copy());
+    }
 }
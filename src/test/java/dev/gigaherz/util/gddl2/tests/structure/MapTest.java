@@ -1,12 +1,19 @@
 package dev.gigaherz.util.gddl2.tests.structure;
 
+import dev.gigaherz.util.gddl2.queries.Index;
+import dev.gigaherz.util.gddl2.queries.Query;
+import dev.gigaherz.util.gddl2.queries.QueryBatch;
+import dev.gigaherz.util.gddl2.queries.Range;
 import dev.gigaherz.util.gddl2.structure.GddlElement;
+import dev.gigaherz.util.gddl2.structure.GddlList;
 import dev.gigaherz.util.gddl2.structure.GddlMap;
 import dev.gigaherz.util.gddl2.structure.GddlValue;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class MapTest
 {
@@ -26,4 +33,181 @@ public class MapTest
         assertNotNull(value);
         assertEquals(element, value);
     }
+
+    @Test
+    public void mapKeepsInsertionOrderAsItGrowsAndShrinks()
+    {
+        GddlMap map = GddlMap.empty();
+        var expected = new ArrayList<String>();
+        for (int i = 0; i < 20; i++)
+        {
+            var key = "k" + i;
+            map.put(key, i);
+            expected.add(key);
+            assertEquals(expected, List.copyOf(map.keySet()));
+        }
+        for (int i = 0; i < 20; i += 3)
+        {
+            var removed = map.remove("k" + i);
+            assertNull(removed.getParent());
+            expected.remove("k" + i);
+            assertEquals(expected, List.copyOf(map.keySet()));
+        }
+        map.put("k4", 40);
+        assertEquals(expected, List.copyOf(map.keySet()));
+        assertEquals(GddlValue.of(40), map.get("k4"));
+        assertSame(map, map.get("k4").getParent());
+
+        var small = GddlMap.of("a", GddlValue.of(1), "b", GddlValue.of(2), "c", GddlValue.of(3));
+        small.remove("b");
+        assertEquals(List.of("a", "c"), List.copyOf(small.keySet()));
+        assertEquals(GddlMap.of("a", GddlValue.of(1), "c", GddlValue.of(3)), small);
+        assertNull(small.get("b"));
+        assertThrows(UnsupportedOperationException.class, () -> small.entrySet().clear());
+
+        small.clear();
+        assertTrue(small.isEmpty());
+        small.put("z", true);
+        assertEquals(List.of("z"), List.copyOf(small.keySet()));
+    }
+
+    @Test
+    public void frozenMapsShareStructure()
+    {
+        var inner = GddlMap.of("x", GddlValue.of(1));
+        GddlMap map = GddlMap.of("a", inner, "b", GddlValue.of("text")).freeze();
+        assertTrue(map.isFrozen());
+        assertTrue(inner.isFrozen());
+        assertSame(map, map.copy());
+        assertThrows(UnsupportedOperationException.class, () -> map.put("c", GddlValue.of(2)));
+        assertThrows(UnsupportedOperationException.class, () -> inner.remove("x"));
+
+        var updated = map.with("c", GddlValue.of(2)).with("a", GddlValue.of(3));
+        assertEquals(List.of("a", "b"), List.copyOf(map.keySet()));
+        assertEquals(List.of("a", "b", "c"), List.copyOf(updated.keySet()));
+        assertSame(inner, map.get("a"));
+        assertSame(map.get("b"), updated.get("b"));
+        assertSame(map, map.without("missing"));
+
+        var removed = updated.without("a");
+        assertEquals(GddlMap.of("b", GddlValue.of("text"), "c", GddlValue.of(2)), removed);
+
+        var mutable = removed.mutableCopy();
+        assertFalse(mutable.isFrozen());
+        assertFalse(mutable.get("b").isFrozen());
+        mutable.put("d", GddlValue.of(4));
+        assertEquals(3, mutable.size());
+        assertEquals(2, removed.size());
+
+        assertThrows(IllegalStateException.class, () -> GddlMap.empty().with("a", GddlValue.of(1)));
+
+        GddlMap big = GddlMap.empty().freeze();
+        for (int i = 0; i < 100; i++)
+        {
+            big = big.with("k" + i, GddlValue.of(i));
+        }
+        for (int i = 0; i < 100; i += 2)
+        {
+            big = big.without("k" + i);
+        }
+        assertEquals(50, big.size());
+        assertEquals("k1", big.keySet().iterator().next());
+        assertEquals(GddlValue.of(99), big.get("k99"));
+    }
+
+    @Test
+    public void cachedHashesFollowNestedChanges()
+    {
+        var list = GddlList.of(GddlValue.of(1), GddlValue.of(2));
+        var inner = GddlMap.of("list", list);
+        var map = GddlMap.of("inner", inner, "b", GddlValue.of("text"));
+
+        int before = map.hashCode();
+        assertEquals(before, map.mutableCopy().hashCode());
+
+        list.add(GddlValue.of(3));
+        assertNotEquals(before, map.hashCode());
+        assertEquals(map.mutableCopy().hashCode(), map.hashCode());
+
+        list.get(0).setComment("changed");
+        assertEquals(map.mutableCopy().hashCode(), map.hashCode());
+
+        inner.put("x", GddlValue.of(5));
+        assertEquals(map.mutableCopy().hashCode(), map.hashCode());
+
+        var other = map.mutableCopy();
+        other.get("b").setWhitespace("  ");
+        assertEquals(map, other);
+
+        other.get("inner").asMap().get("list").asList().set(1, GddlValue.of(7));
+        assertNotEquals(map, other);
+    }
+
+    @Test
+    public void viewsKeepChangesTracked()
+    {
+        var b = GddlValue.of(2);
+        var map = GddlMap.of("a", GddlValue.of(1), "b", b, "c", GddlValue.of("c"), "d", GddlList.of(GddlValue.of(4), GddlValue.of(5)));
+        map.hashCode();
+
+        assertTrue(map.keySet().remove("b"));
+        assertFalse(map.keySet().remove("b"));
+        assertNull(b.getParent());
+        assertEquals(GddlMap.of("a", GddlValue.of(1), "c", GddlValue.of("c"), "d", GddlList.of(GddlValue.of(4), GddlValue.of(5))), map);
+
+        assertTrue(map.values().removeIf(GddlElement::isString));
+        var list = map.get("d").asList();
+        var range = list.get(new Range(Index.fromStart(0), Index.fromEnd(0)));
+        range.remove(1);
+        range.add(GddlValue.of(6));
+        assertSame(list, range.get(1).getParent());
+
+        var expected = GddlMap.of("a", GddlValue.of(1), "d", GddlList.of(GddlValue.of(4), GddlValue.of(6)));
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+
+        map.freeze();
+        assertThrows(UnsupportedOperationException.class, () -> map.keySet().remove("a"));
+    }
+
+    @Test
+    public void frozenElementsGoUpTheWayTheQueryCame()
+    {
+        GddlMap f = GddlMap.of("a", GddlValue.of(1), "s", GddlMap.of("q", GddlValue.of(5))).freeze();
+        GddlMap g = f.with("b", GddlValue.of(2));
+        assertNull(g.get("s").getParent());
+
+        assertEquals(List.of(GddlValue.of(2)), g.query("s/../b").toList());
+        assertEquals(List.of(GddlValue.of(1)), f.query("s/q/../../a").toList());
+        assertEquals(List.of(), f.query("s/../b").toList());
+        assertEquals(List.of(GddlValue.of(2)), QueryBatch.of(Query.fromString("s/../b")).apply(g).get(Query.fromString("s/../b")));
+        assertThrows(IllegalStateException.class, () -> g.get("s").query("../b").toList());
+
+        var outer = GddlMap.of("b", GddlValue.of(3), "f", f);
+        assertEquals(List.of(GddlValue.of(3)), outer.query("f/s/../../b").toList());
+    }
+
+    @Test
+    public void elementsInSeveralMapsKeepTheirHashesUpToDate()
+    {
+        var inner = GddlList.of(GddlValue.of(1));
+        var m1 = GddlMap.of("x", inner);
+        var m2 = GddlMap.of("x", inner);
+        m1.hashCode();
+        inner.add(GddlValue.of(2));
+        var ref = GddlMap.of("x", GddlList.of(GddlValue.of(1), GddlValue.of(2)));
+        assertEquals(ref, m1);
+        assertEquals(ref.hashCode(), m1.hashCode());
+        assertEquals(ref, m2);
+
+        var shared = GddlValue.of(1);
+        var m3 = GddlMap.of("x", shared);
+        m3.hashCode();
+        var m4 = GddlMap.of("x", shared);
+        m4.hashCode();
+        m3.remove("x");
+        assertSame(m4, shared.getParent());
+        shared.setComment("changed");
+        assertEquals(GddlMap.of("x", GddlValue.of(1).withComment("changed")).hashCode(), m4.hashCode());
+    }
 }
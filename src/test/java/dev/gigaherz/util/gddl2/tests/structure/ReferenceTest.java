@@ -6,7 +6,7 @@ import dev.gigaherz.util.gddl2.structure.GddlReference;
 import dev.gigaherz.util.gddl2.structure.GddlValue;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class ReferenceTest
 {
@@ -58,4 +58,32 @@ public class ReferenceTest
         r.resolve(root);
         assertEquals(relativeChild, r.resolvedValue());
     }
+
+    @Test
+    public void copiedReferenceKeepsItsPath()
+    {
+        GddlReference r = GddlReference.of(new Query().absolute().byKey("parent").byKey("child"));
+        GddlReference copy = r.copy();
+        assertEquals(r, copy);
+        assertTrue(copy.isAbsolute());
+        assertEquals(2, copy.getNameParts().size());
+    }
+
+    @Test
+    public void frozenReferencesAreLeftAlone()
+    {
+        GddlReference r = GddlReference.of(new Query().absolute().byKey("x"));
+        GddlMap shared = GddlMap.of("r", r).freeze();
+
+        GddlMap first = GddlMap.of("x", GddlValue.of(7), "shared", shared);
+        first.resolve(first);
+        assertFalse(r.isResolved());
+        assertSame(first, first.simplify());
+        assertSame(r, shared.get("r"));
+
+        GddlMap thawed = GddlMap.of("x", GddlValue.of(8), "shared", shared.mutableCopy());
+        thawed.resolve(thawed);
+        thawed.simplify();
+        assertEquals(GddlValue.of(8), thawed.get("shared").asMap().get("r"));
+    }
 }
@@ -148,4 +148,16 @@ public class ValueTest
             fail("Expected callable to throw, but it returned " + v);
         });
     }
+
+    @Test
+    public void numbersCompareLikeTheirBoxedForms()
+    {
+        assertNotEquals(GddlValue.of(1), GddlValue.of(1.0));
+        assertNotEquals(GddlValue.of(0.0), GddlValue.of(-0.0));
+        assertEquals(GddlValue.of(Double.NaN), GddlValue.of(Double.NaN));
+        assertEquals(GddlValue.of(Long.MIN_VALUE).longValue(), Long.MIN_VALUE);
+        assertEquals(GddlValue.of(-2.5).doubleValue(), -2.5);
+        assertTrue(GddlValue.of((String) null).isNull());
+        assertEquals(GddlValue.nullValue().hashCode(), GddlValue.of((String) null).hashCode());
+    }
 }